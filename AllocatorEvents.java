@@ -0,0 +1,425 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Java Flight Recorder events for allocator operations. The
+ * operation events are created, timed, and committed around each
+ * request, release, compaction, and merge pass; their fields are
+ * filled in only when the recording wants the event. Loading an
+ * event class starts up the flight recorder's event machinery,
+ * which is costly, so until the flight recorder has been started,
+ * from the command line or later through jcmd, no event is
+ * created and each operation costs a single check. After that an
+ * operation event is only created while its type is enabled. The
+ * request, release, and merge events have a default threshold of
+ * 1 ms, so that a recording with default settings keeps only the
+ * slow operations rather than one event per operation. The
+ * utilization event is periodic; its hook is added when the flight
+ * recorder is first seen running and runs only while the event is
+ * enabled. The hook does not read any block table from the flight
+ * recorder's thread; it asks each live MemoryManager to commit the
+ * event at the end of its next operation, on the manager's own
+ * thread. A manager that is idle for a whole period reports on its
+ * next operation.
+ */
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+public final class AllocatorEvents
+{
+   private static final ArrayList<WeakReference<MemoryManager>> MANAGERS =
+      new ArrayList<WeakReference<MemoryManager>>();
+
+   private static volatile boolean periodicHookAdded = false;
+   private static EventType requestType;
+   private static EventType releaseType;
+   private static EventType compactType;
+   private static EventType mergeType;
+   private static int nextManagerId = 0;
+   private static int pruneThreshold = 64;
+
+   @Name("allocator.Request")
+   @Label("Memory Request")
+   @Category({"Memory Allocation Simulator", "Operations"})
+   @StackTrace(false)
+   @Threshold("1 ms")
+   public static final class Request extends Event
+   {
+      @Label("Manager Id")
+      public int managerId;
+
+      @Label("Process Id")
+      public String processId;
+
+      @Label("Strategy")
+      @Description("F (first fit), B (best fit), or W (worst fit)")
+      public char strategy;
+
+      @Label("Lifetime")
+      @Description("L (long-lived) or S (short-lived)")
+      public char lifetime;
+
+      @Label("Requested Bytes")
+      @DataAmount
+      public long requestedBytes;
+
+      @Label("Blocks Scanned")
+      public long blocksScanned;
+
+      @Label("Holes Merged")
+      public long holesMerged;
+
+      @Label("Cache Hit")
+      public boolean cacheHit;
+
+      @Label("Success")
+      public boolean success;
+   }
+
+   @Name("allocator.Release")
+   @Label("Memory Release")
+   @Category({"Memory Allocation Simulator", "Operations"})
+   @StackTrace(false)
+   @Threshold("1 ms")
+   public static final class Release extends Event
+   {
+      @Label("Manager Id")
+      public int managerId;
+
+      @Label("Process Id")
+      public String processId;
+
+      @Label("Released Bytes")
+      @DataAmount
+      public long releasedBytes;
+
+      @Label("Blocks Scanned")
+      public long blocksScanned;
+
+      @Label("Holes Merged")
+      public long holesMerged;
+
+      @Label("Success")
+      public boolean success;
+   }
+
+   @Name("allocator.Compact")
+   @Label("Memory Compaction")
+   @Category({"Memory Allocation Simulator", "Operations"})
+   @StackTrace(false)
+   public static final class Compact extends Event
+   {
+      @Label("Manager Id")
+      public int managerId;
+
+      @Label("Blocks Scanned")
+      public long blocksScanned;
+
+      @Label("Bytes Moved")
+      @DataAmount
+      public long bytesMoved;
+   }
+
+   @Name("allocator.Merge")
+   @Label("Free Block Merge")
+   @Category({"Memory Allocation Simulator", "Operations"})
+   @StackTrace(false)
+   @Threshold("1 ms")
+   public static final class Merge extends Event
+   {
+      @Label("Manager Id")
+      public int managerId;
+
+      @Label("Coalescing Policy")
+      @Description("E (eager), D (deferred), or B (budgeted)")
+      public char policy;
+
+      @Label("Budgeted")
+      @Description("True for a pass limited by the merge budget")
+      public boolean budgeted;
+
+      @Label("Blocks Scanned")
+      public long blocksScanned;
+
+      @Label("Holes Merged")
+      public long holesMerged;
+   }
+
+   @Name("allocator.Utilization")
+   @Label("Memory Utilization")
+   @Category({"Memory Allocation Simulator", "Statistics"})
+   @Period("1 s")
+   @StackTrace(false)
+   public static final class Utilization extends Event
+   {
+      @Label("Manager Id")
+      public int managerId;
+
+      @Label("Total Bytes")
+      @DataAmount
+      public long totalBytes;
+
+      @Label("Free Bytes")
+      @DataAmount
+      public long freeBytes;
+
+      @Label("Utilization")
+      @Percentage
+      public double utilization;
+
+      @Label("Hole Count")
+      public int holeCount;
+
+      @Label("Largest Hole")
+      @DataAmount
+      public long largestHole;
+
+      @Label("External Fragmentation")
+      @Percentage
+      public double fragmentation;
+   }
+
+   //***********************************************************
+   //
+   // Method: AllocatorEvents (Constructor)
+   //
+   // Description: Private constructor. This class only holds
+   // the event types and static helpers.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private AllocatorEvents()
+   {
+   }
+
+   //***********************************************************
+   //
+   // Method: register
+   //
+   // Description: Adds a memory manager to the set reported by
+   // the periodic utilization event and returns the id its
+   // events should carry. Managers are held weakly, so
+   // registration does not keep them alive, and references to
+   // collected managers are pruned as the set grows.
+   //
+   // Parameters: MemoryManager memoryManager - the new manager
+   //
+   // Returns: int - the id assigned to the manager
+   //
+   //***********************************************************
+   public static synchronized int register(MemoryManager memoryManager)
+   {
+      if (MANAGERS.size() >= pruneThreshold)
+      {
+         MANAGERS.removeIf(reference -> reference.get() == null);
+         pruneThreshold = Math.max(64, MANAGERS.size() * 2);
+      }
+
+      MANAGERS.add(new WeakReference<MemoryManager>(memoryManager));
+      nextManagerId = nextManagerId + 1;
+
+      return nextManagerId;
+   }
+
+   //***********************************************************
+   //
+   // Method: isEnabled
+   //
+   // Description: Reports whether the flight recorder has been
+   // started, adding the periodic utilization hook the first
+   // time it has. Until then no event class is loaded.
+   //
+   // Parameters: None
+   //
+   // Returns: boolean - true if events should be created
+   //
+   //***********************************************************
+   public static boolean isEnabled()
+   {
+      boolean enabled;
+      enabled = FlightRecorder.isInitialized();
+
+      if (enabled && !periodicHookAdded)
+      {
+         addPeriodicHook();
+      }
+
+      return enabled;
+   }
+
+   // Factories for the operation events; each returns a begun
+   // event, or null while the flight recorder is not running or
+   // the event type is disabled
+
+   public static Request beginRequest()
+   {
+      Request event = null;
+
+      if (isEnabled() && requestType.isEnabled())
+      {
+         event = new Request();
+         event.begin();
+      }
+
+      return event;
+   }
+
+   public static Release beginRelease()
+   {
+      Release event = null;
+
+      if (isEnabled() && releaseType.isEnabled())
+      {
+         event = new Release();
+         event.begin();
+      }
+
+      return event;
+   }
+
+   public static Compact beginCompact()
+   {
+      Compact event = null;
+
+      if (isEnabled() && compactType.isEnabled())
+      {
+         event = new Compact();
+         event.begin();
+      }
+
+      return event;
+   }
+
+   public static Merge beginMerge()
+   {
+      Merge event = null;
+
+      if (isEnabled() && mergeType.isEnabled())
+      {
+         event = new Merge();
+         event.begin();
+      }
+
+      return event;
+   }
+
+   //***********************************************************
+   //
+   // Method: addPeriodicHook
+   //
+   // Description: Looks up the operation event types and adds
+   // the periodic utilization hook to the flight recorder, once.
+   // The types are set before the volatile flag, so a thread
+   // that sees the flag set also sees them.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private static synchronized void addPeriodicHook()
+   {
+      if (!periodicHookAdded)
+      {
+         requestType = EventType.getEventType(Request.class);
+         releaseType = EventType.getEventType(Release.class);
+         compactType = EventType.getEventType(Compact.class);
+         mergeType = EventType.getEventType(Merge.class);
+         FlightRecorder.addPeriodicEvent(Utilization.class, AllocatorEvents::requestUtilization);
+         periodicHookAdded = true;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: commitUtilization
+   //
+   // Description: Commits one utilization event with the given
+   // figures. Called by a memory manager, on its own thread,
+   // after the periodic hook has asked it to report.
+   //
+   // Parameters:
+   //   int managerId - the id of the reporting manager
+   //   long totalBytes - the size of the managed memory
+   //   long freeBytes - the free bytes, cached blocks included
+   //   int holeCount - the number of free blocks
+   //   long largestHole - the size of the largest usable hole
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public static void commitUtilization(int managerId, long totalBytes, long freeBytes, int holeCount, long largestHole)
+   {
+      Utilization event = new Utilization();
+
+      if (event.shouldCommit())
+      {
+         event.managerId = managerId;
+         event.totalBytes = totalBytes;
+         event.freeBytes = freeBytes;
+         event.utilization = 1.0 - (double) freeBytes / (double) totalBytes;
+         event.holeCount = holeCount;
+         event.largestHole = largestHole;
+         event.fragmentation = 0.0;
+
+         if (freeBytes > 0L)
+         {
+            event.fragmentation = 1.0 - (double) largestHole / (double) freeBytes;
+         }
+
+         event.commit();
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: requestUtilization
+   //
+   // Description: Periodic hook that asks every live memory
+   // manager to commit a utilization event at the end of its
+   // next operation, and drops managers that have been garbage
+   // collected. The flight recorder calls it only while the
+   // utilization event is enabled.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private static synchronized void requestUtilization()
+   {
+      Iterator<WeakReference<MemoryManager>> iterator = MANAGERS.iterator();
+
+      while (iterator.hasNext())
+      {
+         MemoryManager memoryManager = iterator.next().get();
+
+         if (memoryManager == null)
+         {
+            iterator.remove();
+         }
+         else
+         {
+            memoryManager.requestUtilization();
+         }
+      }
+   }
+}
@@ -0,0 +1,469 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Streams commands out of a binary trace written by
+ * BinaryTraceWriter. The file is memory-mapped and decoded in
+ * place, one chunk at a time; compressed chunks are inflated into
+ * a reusable buffer. After each call to next the decoded command
+ * is available through the getters, in the same form that
+ * TraceCommand.apply expects.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class BinaryTraceReader implements AutoCloseable
+{
+   private FileChannel channel;
+   private MappedByteBuffer mappedFile;
+   private boolean compressed;
+   private Inflater inflater;
+   private byte[] inflatedBuffer;
+   private ByteBuffer chunk;
+
+   private ArrayList<String> processIds;
+   private long totalBytes;
+   private int regionCount;
+
+   private int opcode;
+   private String processId;
+   private long size;
+   private char strategy;
+   private char lifetime;
+   private int limit;
+
+   //***********************************************************
+   //
+   // Method: BinaryTraceReader (Constructor)
+   //
+   // Description: Maps the trace file into memory and checks
+   // its header. Traces older than version 3 do not record their
+   // memory, which is then reported as unknown with one region.
+   //
+   // Parameters: String fileName - the binary trace to read
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the file cannot be mapped or is not
+   // a binary trace of a supported version
+   //
+   //***********************************************************
+   public BinaryTraceReader(String fileName) throws IOException
+   {
+      channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+
+      try
+      {
+         long fileSize = channel.size();
+
+         if (fileSize > Integer.MAX_VALUE)
+         {
+            throw new IOException("trace is larger than 2 GB and cannot be mapped");
+         }
+
+         mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0L, fileSize);
+
+         int headerLength;
+         headerLength = BinaryTraceWriter.MAGIC.length + 2;
+
+         if (mappedFile.remaining() < headerLength)
+         {
+            throw new IOException("not a binary trace");
+         }
+
+         int index;
+         index = 0;
+
+         while (index < BinaryTraceWriter.MAGIC.length)
+         {
+            if (mappedFile.get() != BinaryTraceWriter.MAGIC[index])
+            {
+               throw new IOException("not a binary trace");
+            }
+
+            index = index + 1;
+         }
+
+         int version = mappedFile.get();
+
+         if (version < 1 || version > BinaryTraceWriter.VERSION)
+         {
+            throw new IOException("unsupported trace version " + version);
+         }
+
+         compressed = (mappedFile.get() & BinaryTraceWriter.FLAG_COMPRESSED) != 0;
+         totalBytes = 0L;
+         regionCount = 1;
+
+         if (version >= 3)
+         {
+            try
+            {
+               totalBytes = getVarint(mappedFile);
+               regionCount = (int) getVarint(mappedFile);
+            }
+            catch (RuntimeException exception)
+            {
+               throw new IOException("truncated trace header", exception);
+            }
+
+            if (totalBytes < 0L || regionCount < 1 || (totalBytes > 0L && regionCount > totalBytes))
+            {
+               throw new IOException("corrupt trace header");
+            }
+         }
+      }
+      catch (IOException exception)
+      {
+         channel.close();
+         throw exception;
+      }
+
+      if (compressed)
+      {
+         inflater = new Inflater();
+         inflatedBuffer = new byte[64 * 1024];
+      }
+
+      chunk = ByteBuffer.allocate(0);
+      processIds = new ArrayList<String>();
+   }
+
+   // Getters for the memory the trace was recorded on
+
+   public long getTotalBytes()
+   {
+      return totalBytes;
+   }
+
+   public int getRegionCount()
+   {
+      return regionCount;
+   }
+
+   // Getters for the most recently decoded command
+
+   public int getOpcode()
+   {
+      return opcode;
+   }
+
+   public String getProcessId()
+   {
+      return processId;
+   }
+
+   public long getSize()
+   {
+      return size;
+   }
+
+   public char getStrategy()
+   {
+      return strategy;
+   }
+
+   public char getLifetime()
+   {
+      return lifetime;
+   }
+
+   public int getLimit()
+   {
+      return limit;
+   }
+
+   //***********************************************************
+   //
+   // Method: next
+   //
+   // Description: Decodes the next command, moving on to the
+   // next chunk when the current one is used up.
+   //
+   // Parameters: None
+   //
+   // Returns: boolean - false at the end of the trace
+   //
+   // Throws: IOException if the trace is corrupt
+   //
+   //***********************************************************
+   public boolean next() throws IOException
+   {
+      while (!chunk.hasRemaining() && mappedFile.hasRemaining())
+      {
+         loadChunk();
+      }
+
+      boolean decoded;
+      decoded = chunk.hasRemaining();
+
+      if (decoded)
+      {
+         try
+         {
+            decodeCommand();
+         }
+         catch (RuntimeException exception)
+         {
+            throw new IOException("corrupt trace command", exception);
+         }
+      }
+
+      return decoded;
+   }
+
+   //***********************************************************
+   //
+   // Method: close
+   //
+   // Description: Releases the file and the inflater.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the file cannot be closed
+   //
+   //***********************************************************
+   public void close() throws IOException
+   {
+      if (inflater != null)
+      {
+         inflater.end();
+      }
+
+      channel.close();
+   }
+
+   //***********************************************************
+   //
+   // Method: decodeCommand
+   //
+   // Description: Decodes one command from the current chunk
+   // using the layout described in BinaryTraceWriter.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void decodeCommand()
+   {
+      int header;
+      header = chunk.get() & 0xFF;
+
+      opcode = header & BinaryTraceWriter.OPCODE_MASK;
+
+      if ((header & BinaryTraceWriter.EXTENDED_OPCODE) != 0)
+      {
+         opcode = opcode + 8;
+      }
+      processId = null;
+      size = 0L;
+      strategy = 'F';
+      lifetime = 'L';
+      limit = 0;
+
+      if (opcode == TraceCommand.OP_REQUEST || opcode == TraceCommand.OP_RELEASE)
+      {
+         if ((header & BinaryTraceWriter.NEW_PROCESS_ID) != 0)
+         {
+            int length = (int) getVarint();
+            String newProcessId;
+
+            if (chunk.hasArray())
+            {
+               newProcessId = new String(chunk.array(), chunk.arrayOffset() + chunk.position(),
+                                         length, StandardCharsets.UTF_8);
+               chunk.position(chunk.position() + length);
+            }
+            else
+            {
+               byte[] processIdBytes = new byte[length];
+               chunk.get(processIdBytes);
+               newProcessId = new String(processIdBytes, StandardCharsets.UTF_8);
+            }
+
+            processIds.add(newProcessId);
+            processId = newProcessId;
+         }
+         else
+         {
+            processId = processIds.get((int) getVarint());
+         }
+      }
+
+      if (opcode == TraceCommand.OP_REQUEST)
+      {
+         size = getVarint();
+         strategy = BinaryTraceWriter.STRATEGIES[(header >> BinaryTraceWriter.STRATEGY_SHIFT) & 0x03];
+
+         if ((header & BinaryTraceWriter.SHORT_LIVED) != 0)
+         {
+            lifetime = 'S';
+         }
+      }
+      else if (opcode == TraceCommand.OP_INVALID)
+      {
+         size = getVarint();
+      }
+      else if (opcode == TraceCommand.OP_CACHE || opcode == TraceCommand.OP_MERGE)
+      {
+         int optionIndex;
+         optionIndex = (header >> BinaryTraceWriter.STRATEGY_SHIFT) & 0x03;
+
+         if (opcode == TraceCommand.OP_CACHE)
+         {
+            strategy = BinaryTraceWriter.CACHE_OPTIONS[optionIndex];
+         }
+         else
+         {
+            strategy = BinaryTraceWriter.MERGE_POLICIES[optionIndex];
+         }
+
+         limit = (int) getVarint();
+         size = getVarint();
+      }
+      else if (opcode == TraceCommand.OP_REGION)
+      {
+         strategy = BinaryTraceWriter.REGION_OPTIONS[(header >> BinaryTraceWriter.STRATEGY_SHIFT) & 0x03];
+         limit = (int) getVarint();
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: loadChunk
+   //
+   // Description: Makes the next chunk of the file current. An
+   // uncompressed chunk is a view of the mapped file; a
+   // compressed chunk is inflated into the reusable buffer.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the chunk is truncated or corrupt
+   //
+   //***********************************************************
+   private void loadChunk() throws IOException
+   {
+      int rawLength;
+      int storedLength;
+
+      try
+      {
+         rawLength = (int) getVarint(mappedFile);
+         storedLength = (int) getVarint(mappedFile);
+      }
+      catch (RuntimeException exception)
+      {
+         throw new IOException("truncated chunk header", exception);
+      }
+
+      if (storedLength < 0 || rawLength < 0 || storedLength > mappedFile.remaining())
+      {
+         throw new IOException("truncated chunk");
+      }
+
+      ByteBuffer storedBytes = mappedFile.slice();
+      storedBytes.limit(storedLength);
+      mappedFile.position(mappedFile.position() + storedLength);
+
+      if (compressed)
+      {
+         if (inflatedBuffer.length < rawLength)
+         {
+            inflatedBuffer = new byte[rawLength];
+         }
+
+         try
+         {
+            inflater.reset();
+            inflater.setInput(storedBytes);
+
+            int inflatedLength;
+            inflatedLength = 0;
+
+            while (inflatedLength < rawLength && !inflater.finished())
+            {
+               int count = inflater.inflate(inflatedBuffer, inflatedLength, rawLength - inflatedLength);
+
+               if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+               {
+                  throw new IOException("truncated compressed chunk");
+               }
+
+               inflatedLength = inflatedLength + count;
+            }
+         }
+         catch (DataFormatException exception)
+         {
+            throw new IOException("corrupt compressed chunk", exception);
+         }
+
+         chunk = ByteBuffer.wrap(inflatedBuffer, 0, rawLength);
+      }
+      else
+      {
+         chunk = storedBytes;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: getVarint
+   //
+   // Description: Reads a varint from the current chunk.
+   //
+   // Parameters: None
+   //
+   // Returns: long - the decoded value
+   //
+   //***********************************************************
+   private long getVarint()
+   {
+      return getVarint(chunk);
+   }
+
+   //***********************************************************
+   //
+   // Method: getVarint
+   //
+   // Description: Reads a little-endian base-128 varint, as
+   // written by BinaryTraceWriter, from the buffer.
+   //
+   // Parameters: ByteBuffer buffer - the buffer to read from
+   //
+   // Returns: long - the decoded value
+   //
+   //***********************************************************
+   private static long getVarint(ByteBuffer buffer)
+   {
+      long value;
+      int shift;
+      int nextByte;
+
+      value = 0L;
+      shift = 0;
+      nextByte = buffer.get();
+
+      while ((nextByte & 0x80) != 0)
+      {
+         value = value | ((long) (nextByte & 0x7F) << shift);
+         shift = shift + 7;
+         nextByte = buffer.get();
+      }
+
+      return value | ((long) nextByte << shift);
+   }
+}
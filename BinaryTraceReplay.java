@@ -0,0 +1,163 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Replays a binary trace into a RegionedMemoryManager, streaming
+ * the commands out of the memory-mapped file. The memory size and
+ * region count come from the trace header; a memory size given on
+ * the command line overrides the recorded one, and is required
+ * for traces that do not record it. Allocator output goes to
+ * standard output exactly as for the same text commands; the
+ * replay time and rate are reported on standard error.
+ *
+ * Usage: java BinaryTraceReplay [<Megabytes>] <TraceFile>
+ */
+
+import java.io.IOException;
+
+public class BinaryTraceReplay
+{
+   private long totalBytes;
+   private String traceFileName;
+
+   //***********************************************************
+   //
+   // Method: main
+   //
+   // Description: Validates the command line arguments, then
+   // creates a replay object and runs it.
+   //
+   // Parameters: String[] args - command line arguments
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public static void main(String[] args)
+   {
+      if (args.length != 1 && args.length != 2)
+      {
+         System.err.println("Usage: java BinaryTraceReplay [<Megabytes>] <TraceFile>");
+      }
+      else
+      {
+         String traceFileName = args[args.length - 1];
+
+         try
+         {
+            long megabytes;
+            megabytes = 0L;
+
+            if (args.length == 2)
+            {
+               megabytes = Long.parseLong(args[0]);
+            }
+
+            if (args.length == 2 && megabytes <= 0L)
+            {
+               System.err.println("Invalid amount. Please enter a positive integer value.");
+            }
+            else
+            {
+               BinaryTraceReplay replay = new BinaryTraceReplay(megabytes * 1024L * 1024L, traceFileName);
+               replay.run();
+            }
+         }
+         catch (NumberFormatException exception)
+         {
+            System.err.println("Invalid input. Please enter a positive integer value.");
+         }
+         catch (IOException exception)
+         {
+            System.err.println("Error: Could not replay trace " + traceFileName + ": " + exception.getMessage());
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: BinaryTraceReplay (Constructor)
+   //
+   // Description: Constructs a replay of the given binary trace.
+   //
+   // Parameters:
+   //   long totalBytes - the memory size to replay into, or 0 to
+   //                     use the size recorded in the trace
+   //   String traceFileName - the binary trace to replay
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public BinaryTraceReplay(long totalBytes, String traceFileName)
+   {
+      this.totalBytes = totalBytes;
+      this.traceFileName = traceFileName;
+   }
+
+   //***********************************************************
+   //
+   // Method: run
+   //
+   // Description: Creates a memory manager with the size and
+   // region count of the trace, applies every command of the
+   // trace, stopping early at an X command, and reports the
+   // replay rate.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the trace cannot be read, or records
+   // no memory size and none was given
+   //
+   //***********************************************************
+   public void run() throws IOException
+   {
+      long commandCount;
+      commandCount = 0L;
+
+      long startTime;
+      startTime = System.nanoTime();
+
+      try (BinaryTraceReader reader = new BinaryTraceReader(traceFileName))
+      {
+         long memoryBytes;
+         memoryBytes = totalBytes;
+
+         if (memoryBytes <= 0L)
+         {
+            memoryBytes = reader.getTotalBytes();
+         }
+
+         if (memoryBytes <= 0L)
+         {
+            throw new IOException("the trace does not record its memory size; give it in megabytes");
+         }
+
+         RegionedMemoryManager memoryManager = new RegionedMemoryManager(memoryBytes, reader.getRegionCount());
+
+         boolean done;
+         done = false;
+
+         while (!done && reader.next())
+         {
+            done = TraceCommand.apply(memoryManager,
+                                      reader.getOpcode(),
+                                      reader.getProcessId(),
+                                      reader.getSize(),
+                                      reader.getStrategy(),
+                                      reader.getLifetime(),
+                                      reader.getLimit());
+
+            commandCount = commandCount + 1L;
+         }
+      }
+
+      long elapsedNanos;
+      elapsedNanos = Math.max(1L, System.nanoTime() - startTime);
+
+      System.err.println(String.format("Replayed %d commands in %.1f ms (%.0f ops/s)",
+                                       commandCount,
+                                       elapsedNanos / 1.0e6,
+                                       commandCount * 1.0e9 / elapsedNanos));
+   }
+}
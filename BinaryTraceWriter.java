@@ -0,0 +1,554 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Writes allocator commands in the compact binary trace format
+ * read by BinaryTraceReader. The file starts with a header of the
+ * four magic bytes "MATR", a version byte, a flags byte, and the
+ * memory the trace was recorded on: a varint total number of
+ * bytes, 0 when unknown, and a varint region count. The rest of
+ * the file is a sequence of chunks, each a varint raw length, a
+ * varint stored length, and the stored bytes, which are
+ * deflate-compressed when the compression flag is set. A chunk
+ * holds whole commands. Each command starts with a header byte of
+ * bit fields:
+ *
+ *   bits 0-2  opcode (TraceCommand OP_ constant), plus 8 when
+ *             bit 7 is set
+ *   bit 3     a new process id follows as a varint length and
+ *             UTF-8 bytes; otherwise a varint dictionary index
+ *   bits 4-5  strategy for RQ: 0 = F, 1 = B, 2 = W; option for
+ *             CACHE: 0 = ON, 1 = OFF, 2 = STAT; policy for
+ *             MERGE: 0 = E, 1 = D, 2 = B; option for REGION:
+ *             0 = L, 1 = I, 2 = M, 3 = HOME
+ *   bit 6     lifetime for RQ: 0 = L, 1 = S
+ *   bit 7     extended opcode
+ *
+ * RQ and RL then carry the process id, RQ a varint size, and an
+ * invalid command a varint error code. CACHE and MERGE carry a
+ * varint limit (the bin capacity or merge limit) and a varint
+ * size (the largest cached block size, 0 for MERGE). REGION
+ * carries a varint home region, 0 unless the option is HOME.
+ * Process ids are numbered in order of first appearance. Version
+ * 2 added the CACHE and MERGE commands and version 3 the memory
+ * size, region count, and REGION command; older traces are still
+ * read.
+ *
+ * Record methods never throw. The first I/O error stops further
+ * writing and is thrown by close, so the writer can be attached
+ * to a MemoryManager as a recorder.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+public class BinaryTraceWriter
+{
+   public static final byte[] MAGIC = {'M', 'A', 'T', 'R'};
+   public static final int VERSION = 3;
+   public static final int FLAG_COMPRESSED = 1;
+
+   public static final int OPCODE_MASK = 0x07;
+   public static final int NEW_PROCESS_ID = 0x08;
+   public static final int STRATEGY_SHIFT = 4;
+   public static final int SHORT_LIVED = 0x40;
+   public static final int EXTENDED_OPCODE = 0x80;
+
+   public static final char[] STRATEGIES = {'F', 'B', 'W'};
+   public static final char[] CACHE_OPTIONS = {TraceCommand.CACHE_ON, TraceCommand.CACHE_OFF, TraceCommand.CACHE_STAT};
+   public static final char[] MERGE_POLICIES = {'E', 'D', 'B'};
+   public static final char[] REGION_OPTIONS = {'L', 'I', 'M', TraceCommand.REGION_HOME};
+
+   private static final int CHUNK_SIZE = 64 * 1024;
+   private static final int MAX_FIXED_RECORD_SIZE = 1 + 5 + 5 + 10 + 10;
+
+   private OutputStream output;
+   private boolean compressed;
+   private Deflater deflater;
+   private byte[] compressedBuffer;
+
+   private byte[] chunkBuffer;
+   private int chunkLength;
+   private byte[] lengthBuffer;
+
+   private ProcessIdDictionary processIdDictionary;
+   private long commandCount;
+   private long bytesWritten;
+   private IOException failure;
+
+   //***********************************************************
+   //
+   // Method: BinaryTraceWriter (Constructor)
+   //
+   // Description: Creates the trace file and writes a header
+   // that leaves the memory size unknown and names one region,
+   // for traces converted from text.
+   //
+   // Parameters:
+   //   String fileName - the trace file to create
+   //   boolean compressed - true to deflate each chunk
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the file cannot be created
+   //
+   //***********************************************************
+   public BinaryTraceWriter(String fileName, boolean compressed) throws IOException
+   {
+      this(fileName, compressed, 0L, 1);
+   }
+
+   //***********************************************************
+   //
+   // Method: BinaryTraceWriter (Constructor)
+   //
+   // Description: Creates the trace file and writes its header,
+   // including the memory the commands are recorded on so that
+   // a replay can recreate it.
+   //
+   // Parameters:
+   //   String fileName - the trace file to create
+   //   boolean compressed - true to deflate each chunk
+   //   long totalBytes - the total memory size, or 0 if unknown
+   //   int regionCount - the number of regions
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the file cannot be created
+   //
+   //***********************************************************
+   public BinaryTraceWriter(String fileName, boolean compressed, long totalBytes, int regionCount) throws IOException
+   {
+      output = new BufferedOutputStream(new FileOutputStream(fileName), CHUNK_SIZE);
+      this.compressed = compressed;
+
+      if (compressed)
+      {
+         deflater = new Deflater(Deflater.BEST_SPEED);
+         compressedBuffer = new byte[CHUNK_SIZE + CHUNK_SIZE / 8 + 64];
+      }
+
+      chunkBuffer = new byte[CHUNK_SIZE];
+      chunkLength = 0;
+      lengthBuffer = new byte[10];
+      processIdDictionary = new ProcessIdDictionary();
+
+      output.write(MAGIC);
+      output.write(VERSION);
+      output.write(compressed ? FLAG_COMPRESSED : 0);
+      bytesWritten = MAGIC.length + 2;
+
+      int varintLength;
+      varintLength = putVarint(lengthBuffer, 0, totalBytes);
+      output.write(lengthBuffer, 0, varintLength);
+      bytesWritten = bytesWritten + varintLength;
+
+      varintLength = putVarint(lengthBuffer, 0, regionCount);
+      output.write(lengthBuffer, 0, varintLength);
+      bytesWritten = bytesWritten + varintLength;
+   }
+
+   // Statistics getters are intentionally simple
+
+   public long getCommandCount()
+   {
+      return commandCount;
+   }
+
+   public long getBytesWritten()
+   {
+      return bytesWritten;
+   }
+
+   //***********************************************************
+   //
+   // Method: recordRequest
+   //
+   // Description: Records an RQ command.
+   //
+   // Parameters:
+   //   String processId - the id of the requesting process
+   //   long requestedBytes - the number of bytes requested
+   //   char strategy - F, B, or W
+   //   char lifetime - L or S
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public synchronized void recordRequest(String processId, long requestedBytes, char strategy, char lifetime)
+   {
+      int header;
+      header = TraceCommand.OP_REQUEST;
+
+      if (strategy == 'B')
+      {
+         header = header | (1 << STRATEGY_SHIFT);
+      }
+      else if (strategy == 'W')
+      {
+         header = header | (2 << STRATEGY_SHIFT);
+      }
+
+      if (lifetime == 'S')
+      {
+         header = header | SHORT_LIVED;
+      }
+
+      writeRecord(header, processId, requestedBytes, 0L, 1);
+   }
+
+   //***********************************************************
+   //
+   // Method: recordRelease
+   //
+   // Description: Records an RL command.
+   //
+   // Parameters: String processId - the process being released
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public synchronized void recordRelease(String processId)
+   {
+      writeRecord(TraceCommand.OP_RELEASE, processId, 0L, 0L, 0);
+   }
+
+   //***********************************************************
+   //
+   // Method: recordCommand
+   //
+   // Description: Records a command that carries no process id:
+   // C, STAT, X, or an invalid command with its error code.
+   //
+   // Parameters:
+   //   int opcode - OP_COMPACT, OP_STATUS, OP_EXIT, or OP_INVALID
+   //   long errorCode - the error code for OP_INVALID
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public synchronized void recordCommand(int opcode, long errorCode)
+   {
+      int valueCount;
+      valueCount = 0;
+
+      if (opcode == TraceCommand.OP_INVALID)
+      {
+         valueCount = 1;
+      }
+
+      writeRecord(opcode, null, errorCode, 0L, valueCount);
+   }
+
+   //***********************************************************
+   //
+   // Method: recordMode
+   //
+   // Description: Records a CACHE or MERGE command.
+   //
+   // Parameters:
+   //   int opcode - OP_CACHE or OP_MERGE
+   //   char option - the TraceCommand CACHE_ option for CACHE,
+   //                 or E, D, or B for MERGE
+   //   int limit - the bin capacity or merge limit
+   //   long size - the largest cached block size for CACHE ON
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public synchronized void recordMode(int opcode, char option, int limit, long size)
+   {
+      char[] options = MERGE_POLICIES;
+
+      if (opcode == TraceCommand.OP_CACHE)
+      {
+         options = CACHE_OPTIONS;
+      }
+
+      int optionIndex;
+      optionIndex = 0;
+
+      while (optionIndex < options.length - 1 && options[optionIndex] != option)
+      {
+         optionIndex = optionIndex + 1;
+      }
+
+      writeRecord(opcode | (optionIndex << STRATEGY_SHIFT), null, limit, size, 2);
+   }
+
+   //***********************************************************
+   //
+   // Method: recordRegion
+   //
+   // Description: Records a REGION command that selects the
+   // placement policy or the home region.
+   //
+   // Parameters:
+   //   char option - L, I, M, or TraceCommand.REGION_HOME
+   //   int homeRegion - the home region for REGION HOME
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public synchronized void recordRegion(char option, int homeRegion)
+   {
+      int optionIndex;
+      optionIndex = 0;
+
+      while (optionIndex < REGION_OPTIONS.length - 1 && REGION_OPTIONS[optionIndex] != option)
+      {
+         optionIndex = optionIndex + 1;
+      }
+
+      int header;
+      header = EXTENDED_OPCODE | (TraceCommand.OP_REGION & OPCODE_MASK) | (optionIndex << STRATEGY_SHIFT);
+
+      writeRecord(header, null, homeRegion, 0L, 1);
+   }
+
+   //***********************************************************
+   //
+   // Method: close
+   //
+   // Description: Writes the last partial chunk and closes the
+   // file.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if any write failed
+   //
+   //***********************************************************
+   public synchronized void close() throws IOException
+   {
+      if (failure == null)
+      {
+         try
+         {
+            flushChunk();
+         }
+         catch (IOException exception)
+         {
+            failure = exception;
+         }
+      }
+
+      try
+      {
+         output.close();
+      }
+      catch (IOException exception)
+      {
+         if (failure == null)
+         {
+            failure = exception;
+         }
+      }
+
+      if (deflater != null)
+      {
+         deflater.end();
+      }
+
+      if (failure != null)
+      {
+         throw failure;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: writeRecord
+   //
+   // Description: Appends one command to the current chunk,
+   // starting a new chunk first if the command might not fit.
+   // A process id seen for the first time is written in full
+   // and flagged in the header; later uses write its index.
+   //
+   // Parameters:
+   //   int header - the header byte without the new id flag
+   //   String processId - the process id, or null for none
+   //   long value - the size, error code, or limit
+   //   long secondValue - the size of a CACHE or MERGE command
+   //   int valueCount - how many of the values are written
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void writeRecord(int header, String processId, long value, long secondValue, int valueCount)
+   {
+      if (failure == null)
+      {
+         try
+         {
+            byte[] processIdBytes = null;
+            int processIndex;
+            processIndex = -1;
+
+            if (processId != null)
+            {
+               int knownCount;
+               knownCount = processIdDictionary.size();
+               processIndex = processIdDictionary.indexOf(processId);
+
+               if (processIndex == knownCount)
+               {
+                  processIdBytes = processId.getBytes(StandardCharsets.UTF_8);
+                  header = header | NEW_PROCESS_ID;
+               }
+            }
+
+            int maxRecordSize;
+            maxRecordSize = MAX_FIXED_RECORD_SIZE;
+
+            if (processIdBytes != null)
+            {
+               maxRecordSize = maxRecordSize + processIdBytes.length;
+            }
+
+            if (chunkLength + maxRecordSize > chunkBuffer.length)
+            {
+               flushChunk();
+
+               if (maxRecordSize > chunkBuffer.length)
+               {
+                  chunkBuffer = new byte[maxRecordSize];
+               }
+            }
+
+            chunkBuffer[chunkLength] = (byte) header;
+            chunkLength = chunkLength + 1;
+
+            if (processIdBytes != null)
+            {
+               chunkLength = putVarint(chunkBuffer, chunkLength, processIdBytes.length);
+               System.arraycopy(processIdBytes, 0, chunkBuffer, chunkLength, processIdBytes.length);
+               chunkLength = chunkLength + processIdBytes.length;
+            }
+            else if (processIndex >= 0)
+            {
+               chunkLength = putVarint(chunkBuffer, chunkLength, processIndex);
+            }
+
+            if (valueCount > 0)
+            {
+               chunkLength = putVarint(chunkBuffer, chunkLength, value);
+            }
+
+            if (valueCount > 1)
+            {
+               chunkLength = putVarint(chunkBuffer, chunkLength, secondValue);
+            }
+
+            commandCount = commandCount + 1L;
+         }
+         catch (IOException exception)
+         {
+            failure = exception;
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: flushChunk
+   //
+   // Description: Writes the current chunk, compressing it if
+   // requested, and starts an empty one. The deflater is drained
+   // until it reports the stream finished, doubling the
+   // compressed buffer whenever it fills, so a chunk that does
+   // not compress is never cut short.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the chunk cannot be written
+   //
+   //***********************************************************
+   private void flushChunk() throws IOException
+   {
+      if (chunkLength > 0)
+      {
+         byte[] storedBytes;
+         int storedLength;
+
+         if (compressed)
+         {
+            if (compressedBuffer.length < chunkLength + chunkLength / 8 + 64)
+            {
+               compressedBuffer = new byte[chunkLength + chunkLength / 8 + 64];
+            }
+
+            deflater.reset();
+            deflater.setInput(chunkBuffer, 0, chunkLength);
+            deflater.finish();
+            storedLength = deflater.deflate(compressedBuffer);
+
+            while (!deflater.finished())
+            {
+               if (storedLength == compressedBuffer.length)
+               {
+                  compressedBuffer = Arrays.copyOf(compressedBuffer, compressedBuffer.length * 2);
+               }
+
+               storedLength = storedLength + deflater.deflate(compressedBuffer,
+                                                              storedLength,
+                                                              compressedBuffer.length - storedLength);
+            }
+
+            storedBytes = compressedBuffer;
+         }
+         else
+         {
+            storedLength = chunkLength;
+            storedBytes = chunkBuffer;
+         }
+
+         int headerLength;
+         headerLength = putVarint(lengthBuffer, 0, chunkLength);
+         headerLength = putVarint(lengthBuffer, headerLength, storedLength);
+
+         output.write(lengthBuffer, 0, headerLength);
+         output.write(storedBytes, 0, storedLength);
+         bytesWritten = bytesWritten + headerLength + storedLength;
+         chunkLength = 0;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: putVarint
+   //
+   // Description: Stores an unsigned value as a little-endian
+   // base-128 varint: seven bits per byte, with the high bit set
+   // on every byte except the last.
+   //
+   // Parameters:
+   //   byte[] buffer - the destination buffer
+   //   int position - the index of the first byte to write
+   //   long value - the non-negative value to store
+   //
+   // Returns: int - the index just past the last byte written
+   //
+   //***********************************************************
+   private static int putVarint(byte[] buffer, int position, long value)
+   {
+      while ((value & ~0x7FL) != 0L)
+      {
+         buffer[position] = (byte) ((value & 0x7FL) | 0x80L);
+         position = position + 1;
+         value = value >>> 7;
+      }
+
+      buffer[position] = (byte) value;
+
+      return position + 1;
+   }
+}
@@ -0,0 +1,301 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Pre-allocated single-producer/single-consumer ring buffer of
+ * decoded allocator commands. Each command is stored across
+ * parallel primitive arrays so that no objects are created per
+ * command. The producer blocks when the buffer is full, which
+ * gives the parser backpressure from the allocator. A consumer
+ * that stops early aborts the buffer so that the producer is not
+ * left waiting for space that will never be freed.
+ */
+
+import java.util.concurrent.locks.LockSupport;
+
+public class CommandRingBuffer
+{
+   private static final int SPIN_LIMIT = 100;
+   private static final int YIELD_LIMIT = 200;
+   private static final long PARK_NANOS = 50000L;
+
+   private int capacity;
+   private int mask;
+
+   private byte[] opcodes;
+   private int[] processIndexes;
+   private long[] sizes;
+   private char[] strategies;
+   private char[] lifetimes;
+   private int[] limits;
+   private long[] timestamps;
+
+   private volatile long head;
+   private volatile long tail;
+   private volatile boolean aborted;
+
+   // Fields owned by the producer thread
+   private long producerTail;
+   private long cachedHead;
+   private long fullWaitCount;
+
+   // Fields owned by the consumer thread
+   private long consumerHead;
+   private long cachedTail;
+
+   //***********************************************************
+   //
+   // Method: CommandRingBuffer (Constructor)
+   //
+   // Description: Constructs a ring buffer that holds at most
+   // capacity commands. The capacity is rounded up to a power of
+   // two so that slot positions can be found with a mask.
+   //
+   // Parameters: int requestedCapacity - the minimum number of
+   // slots
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public CommandRingBuffer(int requestedCapacity)
+   {
+      capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+      mask = capacity - 1;
+
+      opcodes = new byte[capacity];
+      processIndexes = new int[capacity];
+      sizes = new long[capacity];
+      strategies = new char[capacity];
+      lifetimes = new char[capacity];
+      limits = new int[capacity];
+      timestamps = new long[capacity];
+   }
+
+   public int getCapacity()
+   {
+      return capacity;
+   }
+
+   //***********************************************************
+   //
+   // Method: getFullWaitCount
+   //
+   // Description: Returns the number of times the producer had
+   // to wait because the buffer was full.
+   //
+   // Parameters: None
+   //
+   // Returns: long - the number of backpressure waits
+   //
+   //***********************************************************
+   public long getFullWaitCount()
+   {
+      return fullWaitCount;
+   }
+
+   //***********************************************************
+   //
+   // Method: abort
+   //
+   // Description: Marks the buffer as abandoned by the consumer.
+   // Any waiting or later put returns without storing its
+   // command. Called by the consumer thread only.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void abort()
+   {
+      aborted = true;
+   }
+
+   //***********************************************************
+   //
+   // Method: put
+   //
+   // Description: Appends one command, waiting while the buffer
+   // is full. Waiting spins briefly, then yields, then parks so
+   // that a slow consumer does not leave a core busy. The wait
+   // ends early if the consumer aborts the buffer. Called by the
+   // producer thread only.
+   //
+   // Parameters:
+   //   int opcode - one of the TraceCommand OP_ constants
+   //   int processIndex - the process id dictionary index
+   //   long size - the requested bytes or error code
+   //   char strategy - F, B, or W, or the mode command option
+   //   char lifetime - L or S
+   //   int limit - the limit or bin capacity of a mode command
+   //   long timestamp - System.nanoTime() when decoded
+   //
+   // Returns: boolean - false if the buffer was aborted and the
+   // command was not stored
+   //
+   //***********************************************************
+   public boolean put(int opcode, int processIndex, long size, char strategy, char lifetime, int limit,
+                   long timestamp)
+   {
+      if (producerTail - cachedHead >= capacity)
+      {
+         cachedHead = head;
+
+         if (producerTail - cachedHead >= capacity)
+         {
+            fullWaitCount = fullWaitCount + 1L;
+
+            int attempts;
+            attempts = 0;
+
+            while (producerTail - cachedHead >= capacity && !aborted)
+            {
+               backOff(attempts);
+               attempts = attempts + 1;
+               cachedHead = head;
+            }
+         }
+      }
+
+      boolean stored;
+      stored = !aborted;
+
+      if (stored)
+      {
+         int slot;
+         slot = (int) producerTail & mask;
+
+         opcodes[slot] = (byte) opcode;
+         processIndexes[slot] = processIndex;
+         sizes[slot] = size;
+         strategies[slot] = strategy;
+         lifetimes[slot] = lifetime;
+         limits[slot] = limit;
+         timestamps[slot] = timestamp;
+
+         producerTail = producerTail + 1L;
+         tail = producerTail;
+      }
+
+      return stored;
+   }
+
+   //***********************************************************
+   //
+   // Method: awaitAvailable
+   //
+   // Description: Waits until at least one command is available
+   // and returns how many can be read, up to maxBatch. Called by
+   // the consumer thread only.
+   //
+   // Parameters: int maxBatch - the largest batch to return
+   //
+   // Returns: int - the number of readable commands
+   //
+   //***********************************************************
+   public int awaitAvailable(int maxBatch)
+   {
+      if (cachedTail == consumerHead)
+      {
+         cachedTail = tail;
+
+         int attempts;
+         attempts = 0;
+
+         while (cachedTail == consumerHead)
+         {
+            backOff(attempts);
+            attempts = attempts + 1;
+            cachedTail = tail;
+         }
+      }
+
+      return (int) Math.min((long) maxBatch, cachedTail - consumerHead);
+   }
+
+   // Accessors for the command at an offset from the consumer
+   // position; valid for offsets below the last awaitAvailable
+   // result
+
+   public int opcodeAt(int offset)
+   {
+      return opcodes[(int) (consumerHead + offset) & mask];
+   }
+
+   public int processIndexAt(int offset)
+   {
+      return processIndexes[(int) (consumerHead + offset) & mask];
+   }
+
+   public long sizeAt(int offset)
+   {
+      return sizes[(int) (consumerHead + offset) & mask];
+   }
+
+   public char strategyAt(int offset)
+   {
+      return strategies[(int) (consumerHead + offset) & mask];
+   }
+
+   public char lifetimeAt(int offset)
+   {
+      return lifetimes[(int) (consumerHead + offset) & mask];
+   }
+
+   public int limitAt(int offset)
+   {
+      return limits[(int) (consumerHead + offset) & mask];
+   }
+
+   public long timestampAt(int offset)
+   {
+      return timestamps[(int) (consumerHead + offset) & mask];
+   }
+
+   //***********************************************************
+   //
+   // Method: release
+   //
+   // Description: Frees the slots of commands the consumer has
+   // finished with so the producer can reuse them. Called by the
+   // consumer thread only.
+   //
+   // Parameters: int count - the number of commands consumed
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void release(int count)
+   {
+      consumerHead = consumerHead + count;
+      head = consumerHead;
+   }
+
+   //***********************************************************
+   //
+   // Method: backOff
+   //
+   // Description: Waits a little longer on each attempt: busy
+   // spin first, then yield the processor, then park.
+   //
+   // Parameters: int attempts - the number of failed attempts
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private static void backOff(int attempts)
+   {
+      if (attempts < SPIN_LIMIT)
+      {
+         Thread.onSpinWait();
+      }
+      else if (attempts < YIELD_LIMIT)
+      {
+         Thread.yield();
+      }
+      else
+      {
+         LockSupport.parkNanos(PARK_NANOS);
+      }
+   }
+}
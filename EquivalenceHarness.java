@@ -0,0 +1,2192 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Differential equivalence and performance-regression harness.
+ * Every trace, randomly generated or recorded, is replayed in
+ * lockstep against the plain MemoryManager, kept as the
+ * reference, and against each alternative engine or mode. After
+ * every command the engine's block table is checked against the
+ * reference:
+ *
+ *   exact engines must have an identical block table; for the
+ *   deferred and budgeted merge engines adjacent free blocks are
+ *   merged in the copy that is compared, since placement judges a
+ *   run of free blocks as one hole and they must place exactly
+ *   like eager coalescing;
+ *   equivalent engines place blocks differently by design, so
+ *   they must hold the same bytes for every process and the same
+ *   free bytes, in a block table that covers memory exactly.
+ *   Under memory pressure a different placement can make one of
+ *   them fail a request the other satisfied. Such a divergence is
+ *   accepted only if the side that failed provably had no hole
+ *   large enough, counting its free blocks merged and any cached
+ *   blocks flushed; checking of that engine then stops. Any other
+ *   change in request outcome is a failure. Each engine reports
+ *   how many commands of the trace it was checked on; the
+ *   reference also reports its failed requests, and the
+ *   size-class cache its hits and flushes.
+ *
+ * The random trace keeps live memory under half of the total,
+ * except in a pressure phase over its third quarter where live
+ * memory may reach the total and fragmentation makes requests
+ * fail. A quarter of its requests take one of a few fixed sizes,
+ * so that the size-class cache has blocks to reuse.
+ *
+ * A regioned manager with several regions is also driven from one
+ * thread per region under every placement policy, each thread
+ * using its own region as home, and once more under local-first
+ * placement with every thread sharing region 0 as home and
+ * holding up to half a region, which must make requests fall back
+ * to other regions. Afterwards each region must cover its memory
+ * exactly and agree with its free byte count, every process must
+ * hold exactly the bytes its successful requests asked for, and
+ * once every thread has released its processes each region must
+ * be one free block.
+ *
+ * Each engine is then timed on the trace. All engines are warmed
+ * up before any is timed and the timed runs are interleaved with
+ * runs of a fixed calibration loop of list scans, inserts, and
+ * removals. Each engine's best throughput, the reference's
+ * included, is divided by the best calibration rate, so that the
+ * stored figure carries over between machines and a slowdown
+ * shared by every engine is still caught. Each engine's
+ * throughput is also compared with the reference's from the same
+ * runs, and that ratio is stored too. The harness exits with
+ * status 1 if any check fails or any engine's calibrated
+ * throughput or ratio is below its baseline by more than the
+ * tolerance.
+ *
+ * Usage: java EquivalenceHarness [--seed <N>] [--commands <N>]
+ *                                [--megabytes <N>] [--runs <N>]
+ *                                [--baseline <File>]
+ *                                [--tolerance <Percent>]
+ *                                [--update-baseline]
+ *                                [<TraceFile> ...]
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Random;
+
+public class EquivalenceHarness
+{
+   private static final int REFERENCE = 0;
+   private static final int REGIONED = 1;
+   private static final int BINARY_REPLAY = 2;
+   private static final int MERGE_DEFERRED = 3;
+   private static final int MERGE_BUDGETED = 4;
+   private static final int SIZE_CLASS_CACHE = 5;
+
+   private static final String[] ENGINE_NAMES =
+   {
+      "reference",
+      "regioned-1",
+      "binary-replay",
+      "merge-deferred",
+      "merge-budgeted",
+      "size-class-cache"
+   };
+
+   private static final boolean[] EXACT_ENGINES = {true, true, true, true, true, false};
+
+   private static final int PARALLEL_REGIONS = 4;
+   private static final char[] PLACEMENT_POLICIES = {'L', 'I', 'M'};
+
+   private static final long CALIBRATION_SEED = 4302L;
+   private static final int CALIBRATION_STEPS = 100000;
+   private static final int CALIBRATION_TABLE_SIZE = 512;
+
+   private long seed;
+   private int randomCommandCount;
+   private long totalBytes;
+   private int timedRuns;
+   private String baselineFileName;
+   private double tolerance;
+   private boolean updateBaseline;
+   private ArrayList<String> traceFileNames;
+
+   private Properties baseline;
+   private int failureCount;
+   private PrintStream originalOut;
+   private PrintStream discardOut;
+   private long calibrationChecksum;
+
+   // The trace being checked, stored as parallel arrays
+   private String traceName;
+   private int commandCount;
+   private int[] opcodes;
+   private String[] processIds;
+   private long[] sizes;
+   private char[] strategies;
+   private char[] lifetimes;
+   private File binaryTraceFile;
+
+   // Engine state for the current replay
+   private MemoryManager[] managers;
+   private RegionedMemoryManager regionedManager;
+   private BinaryTraceReader binaryReader;
+
+   //***********************************************************
+   //
+   // Method: main
+   //
+   // Description: Parses the command line arguments, runs the
+   // harness, and exits with status 1 if anything failed.
+   //
+   // Parameters: String[] args - command line arguments
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public static void main(String[] args)
+   {
+      EquivalenceHarness harness = new EquivalenceHarness();
+      boolean passed;
+      passed = false;
+
+      try
+      {
+         harness.parseArguments(args);
+         passed = harness.run();
+      }
+      catch (IllegalArgumentException exception)
+      {
+         System.err.println(exception.getMessage());
+         System.err.println("Usage: java EquivalenceHarness [--seed <N>] [--commands <N>] [--megabytes <N>] "
+                            + "[--runs <N>] [--baseline <File>] [--tolerance <Percent>] "
+                            + "[--update-baseline] [<TraceFile> ...]");
+      }
+      catch (IOException exception)
+      {
+         System.err.println("Error: " + exception.getMessage());
+      }
+
+      if (!passed)
+      {
+         System.exit(1);
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: EquivalenceHarness (Constructor)
+   //
+   // Description: Constructs a harness with the default
+   // settings: one random trace of 20000 commands on 16 MB, five
+   // timed rounds, and a 20 percent tolerance against
+   // harness-baseline.properties.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public EquivalenceHarness()
+   {
+      seed = 4302L;
+      randomCommandCount = 20000;
+      totalBytes = 16L * 1024L * 1024L;
+      timedRuns = 5;
+      baselineFileName = "harness-baseline.properties";
+      tolerance = 0.20;
+      updateBaseline = false;
+      traceFileNames = new ArrayList<String>();
+
+      managers = new MemoryManager[ENGINE_NAMES.length];
+      originalOut = System.out;
+      discardOut = new PrintStream(OutputStream.nullOutputStream());
+   }
+
+   //***********************************************************
+   //
+   // Method: parseArguments
+   //
+   // Description: Reads the options and trace file names from
+   // the command line.
+   //
+   // Parameters: String[] args - command line arguments
+   //
+   // Returns: N/A
+   //
+   // Throws: IllegalArgumentException for an invalid argument
+   //
+   //***********************************************************
+   private void parseArguments(String[] args)
+   {
+      int index;
+      index = 0;
+
+      while (index < args.length)
+      {
+         String argument = args[index];
+
+         if (argument.equals("--update-baseline"))
+         {
+            updateBaseline = true;
+         }
+         else if (argument.startsWith("--"))
+         {
+            if (index + 1 >= args.length)
+            {
+               throw new IllegalArgumentException("Missing value for " + argument + ".");
+            }
+
+            index = index + 1;
+            String value = args[index];
+
+            try
+            {
+               if (argument.equals("--seed"))
+               {
+                  seed = Long.parseLong(value);
+               }
+               else if (argument.equals("--commands"))
+               {
+                  randomCommandCount = Integer.parseInt(value);
+               }
+               else if (argument.equals("--megabytes"))
+               {
+                  totalBytes = Long.parseLong(value) * 1024L * 1024L;
+               }
+               else if (argument.equals("--runs"))
+               {
+                  timedRuns = Integer.parseInt(value);
+               }
+               else if (argument.equals("--baseline"))
+               {
+                  baselineFileName = value;
+               }
+               else if (argument.equals("--tolerance"))
+               {
+                  tolerance = Double.parseDouble(value) / 100.0;
+               }
+               else
+               {
+                  throw new IllegalArgumentException("Unknown option " + argument + ".");
+               }
+            }
+            catch (NumberFormatException exception)
+            {
+               throw new IllegalArgumentException("Invalid value for " + argument + ": " + value);
+            }
+         }
+         else
+         {
+            traceFileNames.add(argument);
+         }
+
+         index = index + 1;
+      }
+
+      if (randomCommandCount < 0 || totalBytes <= 0L || timedRuns <= 0 || tolerance < 0.0)
+      {
+         throw new IllegalArgumentException("Numeric options must not be negative or zero.");
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: run
+   //
+   // Description: Checks and times every trace, then compares
+   // the measured throughput with the baseline or, when asked,
+   // stores it as the new baseline.
+   //
+   // Parameters: None
+   //
+   // Returns: boolean - true if every check passed
+   //
+   // Throws: IOException if a trace or the baseline cannot be
+   // read or written
+   //
+   //***********************************************************
+   public boolean run() throws IOException
+   {
+      baseline = new Properties();
+      File baselineFile = new File(baselineFileName);
+
+      if (baselineFile.exists())
+      {
+         try (InputStream input = new FileInputStream(baselineFile))
+         {
+            baseline.load(input);
+         }
+      }
+
+      failureCount = 0;
+
+      if (randomCommandCount > 0)
+      {
+         generateRandomTrace();
+         checkTrace();
+         checkParallelRegions();
+      }
+
+      int index;
+      index = 0;
+
+      while (index < traceFileNames.size())
+      {
+         loadTrace(traceFileNames.get(index));
+         checkTrace();
+         index = index + 1;
+      }
+
+      if (updateBaseline)
+      {
+         try (OutputStream output = new FileOutputStream(baselineFile))
+         {
+            baseline.store(output, "EquivalenceHarness throughput relative to the calibration loop and the reference engine");
+         }
+
+         System.out.println("Baseline written to " + baselineFileName + ".");
+      }
+
+      if (failureCount == 0)
+      {
+         System.out.println("PASSED");
+      }
+      else
+      {
+         System.out.println("FAILED: " + failureCount + " check(s) failed.");
+      }
+
+      return failureCount == 0;
+   }
+
+   //***********************************************************
+   //
+   // Method: checkTrace
+   //
+   // Description: Runs the lockstep equivalence check and the
+   // throughput measurement for the current trace.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the binary trace cannot be used
+   //
+   //***********************************************************
+   private void checkTrace() throws IOException
+   {
+      System.out.println("Trace " + traceName + ": " + commandCount + " commands");
+
+      writeBinaryTrace();
+
+      try
+      {
+         checkEquivalence();
+         measureThroughput();
+      }
+      finally
+      {
+         binaryTraceFile.delete();
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: checkEquivalence
+   //
+   // Description: Replays the trace on every engine at once and
+   // compares each engine with the reference after every
+   // command. An engine stops being checked after its first
+   // mismatch, which is reported with the failing command, or
+   // once an equivalent engine's request succeeds or fails
+   // differently from the reference; that is a failure unless
+   // checkOutcome shows the failed request had no hole. Every
+   // engine that did not fail reports how many commands were
+   // checked, along with its cache hits and flushes if it has a
+   // size-class cache; the reference reports its failed
+   // requests.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the binary trace cannot be read
+   //
+   //***********************************************************
+   private void checkEquivalence() throws IOException
+   {
+      boolean[] diverged = new boolean[ENGINE_NAMES.length];
+      boolean[] failed = new boolean[ENGINE_NAMES.length];
+      long[] failedRequests = new long[ENGINE_NAMES.length];
+      int[] checkedCommands = new int[ENGINE_NAMES.length];
+
+      int engine;
+      engine = 0;
+
+      while (engine < ENGINE_NAMES.length)
+      {
+         startEngine(engine);
+         engine = engine + 1;
+      }
+
+      int index;
+      index = 0;
+
+      System.setOut(discardOut);
+
+      try
+      {
+         while (index < commandCount)
+         {
+            engine = 0;
+
+            while (engine < ENGINE_NAMES.length)
+            {
+               if (!diverged[engine])
+               {
+                  stepEngine(engine, index);
+               }
+
+               engine = engine + 1;
+            }
+
+            ArrayList<MemoryBlock> reference = managers[REFERENCE].getBlockSnapshot();
+            long referenceFailures = managers[REFERENCE].getFailedRequestCount();
+            boolean referenceFailed = referenceFailures != failedRequests[REFERENCE];
+            failedRequests[REFERENCE] = referenceFailures;
+            engine = REFERENCE + 1;
+
+            while (engine < ENGINE_NAMES.length)
+            {
+               boolean engineFailed;
+               engineFailed = false;
+
+               if (!diverged[engine])
+               {
+                  long engineFailures = managers[engine].getFailedRequestCount();
+                  engineFailed = engineFailures != failedRequests[engine];
+                  failedRequests[engine] = engineFailures;
+               }
+
+               if (!diverged[engine] && !EXACT_ENGINES[engine] && engineFailed != referenceFailed)
+               {
+                  String mismatch = checkOutcome(engine, index, engineFailed, reference);
+                  diverged[engine] = true;
+
+                  if (mismatch == null)
+                  {
+                     originalOut.println("  note " + ENGINE_NAMES[engine] + " at command " + (index + 1)
+                                         + " (" + describeCommand(index) + "): "
+                                         + (engineFailed ? "the engine" : "the reference")
+                                         + " failed with no hole large enough; checking stops here");
+                  }
+                  else
+                  {
+                     failed[engine] = true;
+                     failureCount = failureCount + 1;
+                     originalOut.println("  FAIL " + ENGINE_NAMES[engine] + " at command " + (index + 1)
+                                         + " (" + describeCommand(index) + "): " + mismatch);
+                  }
+               }
+
+               if (!diverged[engine])
+               {
+                  String mismatch = compareWithReference(engine, reference);
+
+                  if (mismatch == null)
+                  {
+                     checkedCommands[engine] = checkedCommands[engine] + 1;
+                  }
+                  else
+                  {
+                     diverged[engine] = true;
+                     failed[engine] = true;
+                     failureCount = failureCount + 1;
+                     originalOut.println("  FAIL " + ENGINE_NAMES[engine] + " at command " + (index + 1)
+                                         + " (" + describeCommand(index) + "): " + mismatch);
+                  }
+               }
+
+               engine = engine + 1;
+            }
+
+            index = index + 1;
+         }
+      }
+      finally
+      {
+         System.setOut(originalOut);
+
+         engine = 0;
+
+         while (engine < ENGINE_NAMES.length)
+         {
+            stopEngine(engine);
+            engine = engine + 1;
+         }
+      }
+
+      System.out.println("  " + ENGINE_NAMES[REFERENCE] + " (" + failedRequests[REFERENCE] + " failed requests)");
+      engine = REFERENCE + 1;
+
+      while (engine < ENGINE_NAMES.length)
+      {
+         if (!failed[engine])
+         {
+            String counts = "";
+            SizeClassCache cache = managers[engine].getSizeClassCache();
+
+            if (cache != null)
+            {
+               counts = ", " + cache.getHitCount() + " cache hits, " + cache.getFlushCount() + " flushes";
+            }
+
+            System.out.println("  ok   " + ENGINE_NAMES[engine]
+                               + (EXACT_ENGINES[engine] ? " (identical, " : " (equivalent, ")
+                               + checkedCommands[engine] + " of " + commandCount + " commands checked"
+                               + counts + ")");
+         }
+
+         engine = engine + 1;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: checkOutcome
+   //
+   // Description: Decides whether a request that succeeded on
+   // one side and failed on the other is a legitimate result of
+   // different placement. It is only if the side that failed had
+   // no hole large enough for the request, counting its free
+   // blocks as merged and any cached blocks as flushed.
+   //
+   // Parameters:
+   //   int engine - the engine whose outcome differs
+   //   int index - the index of the request command
+   //   boolean engineFailed - true if the engine failed the
+   //                          request, false if the reference did
+   //   ArrayList<MemoryBlock> reference - the reference table
+   //
+   // Returns: String - why the divergence is not legitimate, or
+   // null if it is
+   //
+   //***********************************************************
+   private String checkOutcome(int engine, int index, boolean engineFailed, ArrayList<MemoryBlock> reference)
+   {
+      String mismatch;
+      mismatch = null;
+
+      if (opcodes[index] != TraceCommand.OP_REQUEST)
+      {
+         mismatch = "request failures changed on a command that is not a request";
+      }
+      else
+      {
+         ArrayList<MemoryBlock> blocks = reference;
+         String side = "reference";
+
+         if (engineFailed)
+         {
+            blocks = managers[engine].getBlockSnapshot();
+            side = "engine";
+         }
+
+         long largestHole;
+         largestHole = findLargestFreeRun(blocks);
+
+         if (largestHole >= sizes[index])
+         {
+            mismatch = "the " + side + " failed the request although a free run of " + largestHole
+                       + " bytes could hold it";
+         }
+      }
+
+      return mismatch;
+   }
+
+   //***********************************************************
+   //
+   // Method: findLargestFreeRun
+   //
+   // Description: Finds the size of the largest run of adjacent
+   // free blocks, cached or not, in a block table.
+   //
+   // Parameters: ArrayList<MemoryBlock> blocks - the table
+   //
+   // Returns: long - the size of the largest free run, or 0
+   //
+   //***********************************************************
+   private static long findLargestFreeRun(ArrayList<MemoryBlock> blocks)
+   {
+      long largestRun;
+      long currentRun;
+      largestRun = 0L;
+      currentRun = 0L;
+
+      int index;
+      index = 0;
+
+      while (index < blocks.size())
+      {
+         MemoryBlock block = blocks.get(index);
+
+         if (block.isFree())
+         {
+            currentRun = currentRun + block.getSize();
+            largestRun = Math.max(largestRun, currentRun);
+         }
+         else
+         {
+            currentRun = 0L;
+         }
+
+         index = index + 1;
+      }
+
+      return largestRun;
+   }
+
+   //***********************************************************
+   //
+   // Method: mergeFreeRuns
+   //
+   // Description: Copies a block table with every run of
+   // adjacent free blocks replaced by one free block, the table
+   // eager coalescing would have.
+   //
+   // Parameters: ArrayList<MemoryBlock> blocks - the table
+   //
+   // Returns: ArrayList<MemoryBlock> - the merged copy
+   //
+   //***********************************************************
+   private static ArrayList<MemoryBlock> mergeFreeRuns(ArrayList<MemoryBlock> blocks)
+   {
+      ArrayList<MemoryBlock> merged = new ArrayList<MemoryBlock>(blocks.size());
+
+      int index;
+      index = 0;
+
+      while (index < blocks.size())
+      {
+         MemoryBlock block = blocks.get(index);
+         int lastIndex = merged.size() - 1;
+
+         if (block.isFree() && lastIndex >= 0 && merged.get(lastIndex).isFree())
+         {
+            MemoryBlock previous = merged.get(lastIndex);
+            merged.set(lastIndex, new MemoryBlock(previous.getStartAddress(), block.getEndAddress(), true, ""));
+         }
+         else
+         {
+            merged.add(block);
+         }
+
+         index = index + 1;
+      }
+
+      return merged;
+   }
+
+   //***********************************************************
+   //
+   // Method: compareWithReference
+   //
+   // Description: Compares one engine's block table with the
+   // reference table, exactly or by equivalence as the engine
+   // requires.
+   //
+   // Parameters:
+   //   int engine - the engine to compare
+   //   ArrayList<MemoryBlock> reference - the reference table
+   //
+   // Returns: String - a description of the first difference,
+   // or null if the engine matches
+   //
+   //***********************************************************
+   private String compareWithReference(int engine, ArrayList<MemoryBlock> reference)
+   {
+      ArrayList<MemoryBlock> blocks = managers[engine].getBlockSnapshot();
+      String mismatch;
+
+      if (engine == MERGE_DEFERRED || engine == MERGE_BUDGETED)
+      {
+         mismatch = compareExact(mergeFreeRuns(blocks), reference);
+      }
+      else if (EXACT_ENGINES[engine])
+      {
+         mismatch = compareExact(blocks, reference);
+      }
+      else
+      {
+         mismatch = checkCoverage(blocks, totalBytes);
+
+         if (mismatch == null)
+         {
+            mismatch = compareEquivalent(blocks, reference);
+         }
+      }
+
+      return mismatch;
+   }
+
+   //***********************************************************
+   //
+   // Method: compareExact
+   //
+   // Description: Checks that two block tables are identical.
+   //
+   // Parameters:
+   //   ArrayList<MemoryBlock> blocks - the engine's table
+   //   ArrayList<MemoryBlock> reference - the reference table
+   //
+   // Returns: String - the first difference, or null
+   //
+   //***********************************************************
+   private String compareExact(ArrayList<MemoryBlock> blocks, ArrayList<MemoryBlock> reference)
+   {
+      String mismatch;
+      mismatch = null;
+
+      if (blocks.size() != reference.size())
+      {
+         mismatch = blocks.size() + " blocks, reference has " + reference.size();
+      }
+
+      int index;
+      index = 0;
+
+      while (mismatch == null && index < blocks.size())
+      {
+         MemoryBlock block = blocks.get(index);
+         MemoryBlock expected = reference.get(index);
+
+         if (block.getStartAddress() != expected.getStartAddress()
+             || block.getEndAddress() != expected.getEndAddress()
+             || block.isFree() != expected.isFree()
+             || !block.getProcessId().equals(expected.getProcessId()))
+         {
+            mismatch = "block " + index + " is " + describeBlock(block)
+                       + ", reference has " + describeBlock(expected);
+         }
+
+         index = index + 1;
+      }
+
+      return mismatch;
+   }
+
+   //***********************************************************
+   //
+   // Method: checkCoverage
+   //
+   // Description: Checks that a block table covers memory from
+   // address 0 to the last address with no gaps or overlaps.
+   //
+   // Parameters:
+   //   ArrayList<MemoryBlock> blocks - the table
+   //   long memoryBytes - the size of the memory it manages
+   //
+   // Returns: String - the first problem found, or null
+   //
+   //***********************************************************
+   private String checkCoverage(ArrayList<MemoryBlock> blocks, long memoryBytes)
+   {
+      String mismatch;
+      mismatch = null;
+
+      long nextAddress;
+      nextAddress = 0L;
+
+      int index;
+      index = 0;
+
+      while (mismatch == null && index < blocks.size())
+      {
+         MemoryBlock block = blocks.get(index);
+
+         if (block.getStartAddress() != nextAddress || block.getEndAddress() < block.getStartAddress())
+         {
+            mismatch = "block " + index + " is " + describeBlock(block)
+                       + " but the previous block ended before " + nextAddress;
+         }
+
+         nextAddress = block.getEndAddress() + 1L;
+         index = index + 1;
+      }
+
+      if (mismatch == null && nextAddress != memoryBytes)
+      {
+         mismatch = "blocks end before address " + memoryBytes;
+      }
+
+      return mismatch;
+   }
+
+   //***********************************************************
+   //
+   // Method: compareEquivalent
+   //
+   // Description: Checks that two block tables hold the same
+   // number of bytes for every process and the same number of
+   // free bytes, wherever those bytes are placed.
+   //
+   // Parameters:
+   //   ArrayList<MemoryBlock> blocks - the engine's table
+   //   ArrayList<MemoryBlock> reference - the reference table
+   //
+   // Returns: String - the first difference, or null
+   //
+   //***********************************************************
+   private String compareEquivalent(ArrayList<MemoryBlock> blocks, ArrayList<MemoryBlock> reference)
+   {
+      HashMap<String, Long> bytesByProcess = sumBytesByProcess(blocks);
+      HashMap<String, Long> expectedByProcess = sumBytesByProcess(reference);
+
+      String mismatch;
+      mismatch = null;
+
+      if (!bytesByProcess.equals(expectedByProcess))
+      {
+         for (String processId : expectedByProcess.keySet())
+         {
+            if (mismatch == null && !expectedByProcess.get(processId).equals(bytesByProcess.get(processId)))
+            {
+               mismatch = describeProcess(processId, bytesByProcess.get(processId), expectedByProcess.get(processId));
+            }
+         }
+
+         for (String processId : bytesByProcess.keySet())
+         {
+            if (mismatch == null && !expectedByProcess.containsKey(processId))
+            {
+               mismatch = describeProcess(processId, bytesByProcess.get(processId), null);
+            }
+         }
+      }
+
+      return mismatch;
+   }
+
+   //***********************************************************
+   //
+   // Method: sumBytesByProcess
+   //
+   // Description: Totals the bytes held by each process, with
+   // free memory totalled under the empty process id.
+   //
+   // Parameters: ArrayList<MemoryBlock> blocks - the table
+   //
+   // Returns: HashMap<String, Long> - bytes by process id
+   //
+   //***********************************************************
+   private HashMap<String, Long> sumBytesByProcess(ArrayList<MemoryBlock> blocks)
+   {
+      HashMap<String, Long> bytesByProcess = new HashMap<String, Long>();
+
+      int index;
+      index = 0;
+
+      while (index < blocks.size())
+      {
+         MemoryBlock block = blocks.get(index);
+         String owner = block.isFree() ? "" : block.getProcessId();
+         bytesByProcess.merge(owner, block.getSize(), Long::sum);
+         index = index + 1;
+      }
+
+      return bytesByProcess;
+   }
+
+   //***********************************************************
+   //
+   // Method: checkParallelRegions
+   //
+   // Description: Checks a regioned manager driven from one
+   // thread per region under each placement policy, with each
+   // thread using its own region as home, and then under
+   // local-first placement with every thread sharing region 0
+   // as home.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void checkParallelRegions()
+   {
+      int policyIndex;
+      policyIndex = 0;
+
+      while (policyIndex < PLACEMENT_POLICIES.length)
+      {
+         checkParallelPolicy(PLACEMENT_POLICIES[policyIndex], false);
+         policyIndex = policyIndex + 1;
+      }
+
+      checkParallelPolicy('L', true);
+   }
+
+   //***********************************************************
+   //
+   // Method: checkParallelPolicy
+   //
+   // Description: Drives a regioned manager from one thread per
+   // region under one placement policy, then checks the
+   // regions. Each thread uses its own process ids and a random
+   // workload derived from the seed. When the threads share
+   // region 0 as home, together they hold up to twice its size,
+   // so the check also fails if no request fell back to another
+   // region.
+   //
+   // Parameters:
+   //   char policy - L, I, or M
+   //   boolean sharedHome - true for every thread to use region
+   //                        0 as home instead of its own region
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void checkParallelPolicy(char policy, boolean sharedHome)
+   {
+      String name = "parallel-" + PARALLEL_REGIONS + " " + policy;
+
+      if (sharedHome)
+      {
+         name = name + " shared home";
+      }
+
+      RegionedMemoryManager manager = new RegionedMemoryManager(totalBytes, PARALLEL_REGIONS);
+      manager.setPlacementPolicy(policy);
+
+      ArrayList<HashMap<String, Long>> expectedBytes = new ArrayList<HashMap<String, Long>>();
+      int thread;
+      thread = 0;
+
+      while (thread < PARALLEL_REGIONS)
+      {
+         expectedBytes.add(new HashMap<String, Long>());
+         thread = thread + 1;
+      }
+
+      long startTime;
+      startTime = System.nanoTime();
+
+      String mismatch = runParallelPhase(manager, expectedBytes, sharedHome, false);
+      long elapsedNanos = Math.max(1L, System.nanoTime() - startTime);
+
+      if (mismatch == null)
+      {
+         mismatch = checkRegions(manager, expectedBytes);
+      }
+
+      if (mismatch == null && sharedHome && manager.getFallbackCount() == 0L)
+      {
+         mismatch = "every thread shared region 0 as home but no request fell back to another region";
+      }
+
+      if (mismatch == null)
+      {
+         mismatch = runParallelPhase(manager, expectedBytes, sharedHome, true);
+      }
+
+      if (mismatch == null)
+      {
+         mismatch = checkRegions(manager, expectedBytes);
+      }
+
+      if (mismatch == null)
+      {
+         System.out.println(String.format("  ok   %s (%d threads, %.0f ops/s, %d fallbacks, %d failed requests)",
+                                          name,
+                                          PARALLEL_REGIONS,
+                                          randomCommandCount * 1.0e9 / elapsedNanos,
+                                          manager.getFallbackCount(),
+                                          manager.getFailedRequestCount()));
+      }
+      else
+      {
+         failureCount = failureCount + 1;
+         System.out.println("  FAIL " + name + ": " + mismatch);
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: runParallelPhase
+   //
+   // Description: Runs one worker thread per region and waits
+   // for all of them. In the workload phase each thread issues
+   // its share of the random command count; in the release
+   // phase each thread releases every process it still holds.
+   //
+   // Parameters:
+   //   RegionedMemoryManager manager - the manager to drive
+   //   ArrayList<HashMap<String, Long>> expectedBytes - the
+   //        bytes held by each thread's processes, updated by
+   //        the threads
+   //   boolean sharedHome - true for every thread to use region
+   //                        0 as home
+   //   boolean releaseAll - true for the release phase
+   //
+   // Returns: String - the first worker failure, or null
+   //
+   //***********************************************************
+   private String runParallelPhase(RegionedMemoryManager manager,
+                                   ArrayList<HashMap<String, Long>> expectedBytes,
+                                   boolean sharedHome,
+                                   boolean releaseAll)
+   {
+      Thread[] workers = new Thread[PARALLEL_REGIONS];
+      Throwable[] failures = new Throwable[PARALLEL_REGIONS];
+
+      System.setOut(discardOut);
+
+      try
+      {
+         int thread;
+         thread = 0;
+
+         while (thread < PARALLEL_REGIONS)
+         {
+            final int workerIndex = thread;
+
+            workers[thread] = new Thread(() ->
+            {
+               try
+               {
+                  runParallelWorker(manager, workerIndex, expectedBytes.get(workerIndex), sharedHome, releaseAll);
+               }
+               catch (Throwable exception)
+               {
+                  failures[workerIndex] = exception;
+               }
+            }, "harness-region-" + thread);
+            workers[thread].start();
+
+            thread = thread + 1;
+         }
+
+         thread = 0;
+
+         while (thread < PARALLEL_REGIONS)
+         {
+            joinWorker(workers[thread]);
+            thread = thread + 1;
+         }
+      }
+      finally
+      {
+         System.setOut(originalOut);
+      }
+
+      String mismatch;
+      mismatch = null;
+
+      int thread;
+      thread = 0;
+
+      while (mismatch == null && thread < PARALLEL_REGIONS)
+      {
+         if (failures[thread] != null)
+         {
+            mismatch = "thread " + thread + " failed: " + failures[thread];
+         }
+
+         thread = thread + 1;
+      }
+
+      return mismatch;
+   }
+
+   //***********************************************************
+   //
+   // Method: joinWorker
+   //
+   // Description: Waits for a worker thread to finish, even if
+   // the waiting thread is interrupted.
+   //
+   // Parameters: Thread worker - the thread to wait for
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private static void joinWorker(Thread worker)
+   {
+      boolean interrupted;
+      interrupted = false;
+
+      while (worker.isAlive())
+      {
+         try
+         {
+            worker.join();
+         }
+         catch (InterruptedException exception)
+         {
+            interrupted = true;
+         }
+      }
+
+      if (interrupted)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: runParallelWorker
+   //
+   // Description: Body of one worker thread. The workload mixes
+   // requests of every strategy and lifetime with releases and
+   // occasional C and STAT commands, keeping the thread's live
+   // memory under a quarter of one region, or under half of one
+   // region when every thread shares region 0 as home. Only
+   // successful requests are added to the expected bytes.
+   //
+   // Parameters:
+   //   RegionedMemoryManager manager - the manager to drive
+   //   int workerIndex - the thread's index, which is also its
+   //                     home region unless the home is shared
+   //   HashMap<String, Long> expectedBytes - the bytes held by
+   //        each of the thread's processes
+   //   boolean sharedHome - true to use region 0 as home
+   //   boolean releaseAll - true to release every process
+   //        instead of running the workload
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void runParallelWorker(RegionedMemoryManager manager,
+                                  int workerIndex,
+                                  HashMap<String, Long> expectedBytes,
+                                  boolean sharedHome,
+                                  boolean releaseAll)
+   {
+      if (releaseAll)
+      {
+         for (String processId : expectedBytes.keySet())
+         {
+            manager.releaseMemory(processId);
+         }
+
+         expectedBytes.clear();
+      }
+      else
+      {
+         Random random = new Random(seed + workerIndex);
+         char[] strategyChoices = {'F', 'B', 'W'};
+
+         long regionBytes;
+         regionBytes = totalBytes / PARALLEL_REGIONS;
+
+         int homeRegion;
+         homeRegion = workerIndex;
+
+         long liveLimit;
+         liveLimit = regionBytes / 4L;
+
+         if (sharedHome)
+         {
+            homeRegion = 0;
+            liveLimit = regionBytes / 2L;
+         }
+
+         long maxRequest;
+         maxRequest = Math.max(1L, regionBytes / 256L);
+
+         long totalLive;
+         totalLive = 0L;
+
+         int commandIndex;
+         commandIndex = 0;
+
+         while (commandIndex < randomCommandCount / PARALLEL_REGIONS)
+         {
+            String processId = "T" + workerIndex + "-P" + random.nextInt(128);
+            Long held = expectedBytes.get(processId);
+            int choice = random.nextInt(100);
+
+            if (choice < 1)
+            {
+               manager.compactMemory();
+            }
+            else if (choice < 2)
+            {
+               manager.printMemoryStatus();
+            }
+            else if (choice < 50 && held != null)
+            {
+               manager.releaseMemory(processId);
+               expectedBytes.remove(processId);
+               totalLive = totalLive - held.longValue();
+            }
+            else
+            {
+               long requestedBytes = 1L + (long) (random.nextDouble() * maxRequest);
+
+               if (totalLive + requestedBytes <= liveLimit
+                   && manager.tryRequestMemory(processId, requestedBytes,
+                                               strategyChoices[random.nextInt(3)],
+                                               random.nextInt(5) == 0 ? 'S' : 'L',
+                                               homeRegion))
+               {
+                  expectedBytes.merge(processId, requestedBytes, Long::sum);
+                  totalLive = totalLive + requestedBytes;
+               }
+            }
+
+            commandIndex = commandIndex + 1;
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: checkRegions
+   //
+   // Description: Checks every region of a regioned manager
+   // after a parallel phase: its block table must cover the
+   // region exactly and agree with its free byte count, and
+   // across all regions each process must hold exactly the
+   // bytes its thread expects. With no processes left, each
+   // region must be a single free block.
+   //
+   // Parameters:
+   //   RegionedMemoryManager manager - the manager to check
+   //   ArrayList<HashMap<String, Long>> expectedBytes - the
+   //        bytes held by each thread's processes
+   //
+   // Returns: String - the first problem found, or null
+   //
+   //***********************************************************
+   private String checkRegions(RegionedMemoryManager manager, ArrayList<HashMap<String, Long>> expectedBytes)
+   {
+      String mismatch;
+      mismatch = null;
+
+      HashMap<String, Long> expectedByProcess = new HashMap<String, Long>();
+      ArrayList<MemoryBlock> allBlocks = new ArrayList<MemoryBlock>();
+
+      int thread;
+      thread = 0;
+
+      while (thread < PARALLEL_REGIONS)
+      {
+         for (String processId : expectedBytes.get(thread).keySet())
+         {
+            expectedByProcess.put(processId, expectedBytes.get(thread).get(processId));
+         }
+
+         thread = thread + 1;
+      }
+
+      int regionIndex;
+      regionIndex = 0;
+
+      while (mismatch == null && regionIndex < manager.getRegionCount())
+      {
+         MemoryManager region = manager.getRegion(regionIndex);
+         ArrayList<MemoryBlock> blocks;
+         long regionFree;
+
+         synchronized (region)
+         {
+            blocks = region.getBlockSnapshot();
+            regionFree = region.getFreeBytes();
+         }
+
+         mismatch = checkCoverage(blocks, region.getTotalMemorySize());
+
+         long freeInTable;
+         freeInTable = sumBytesByProcess(blocks).getOrDefault("", 0L).longValue();
+
+         if (mismatch == null && freeInTable != regionFree)
+         {
+            mismatch = "free blocks hold " + freeInTable + " bytes but the free byte count is " + regionFree;
+         }
+
+         if (mismatch == null && expectedByProcess.isEmpty() && blocks.size() != 1)
+         {
+            mismatch = "all processes were released but " + blocks.size() + " blocks remain";
+         }
+
+         if (mismatch != null)
+         {
+            mismatch = "region " + regionIndex + ": " + mismatch;
+         }
+
+         allBlocks.addAll(blocks);
+         regionIndex = regionIndex + 1;
+      }
+
+      if (mismatch == null)
+      {
+         HashMap<String, Long> bytesByProcess = sumBytesByProcess(allBlocks);
+         bytesByProcess.remove("");
+
+         for (String processId : expectedByProcess.keySet())
+         {
+            if (mismatch == null && !expectedByProcess.get(processId).equals(bytesByProcess.get(processId)))
+            {
+               mismatch = describeProcess(processId, bytesByProcess.get(processId), expectedByProcess.get(processId));
+            }
+         }
+
+         for (String processId : bytesByProcess.keySet())
+         {
+            if (mismatch == null && !expectedByProcess.containsKey(processId))
+            {
+               mismatch = describeProcess(processId, bytesByProcess.get(processId), null);
+            }
+         }
+      }
+
+      return mismatch;
+   }
+
+   //***********************************************************
+   //
+   // Method: measureThroughput
+   //
+   // Description: Times each engine replaying the whole trace
+   // with allocator output discarded. Every engine and the
+   // calibration loop are warmed up before any is timed, and
+   // the timed runs are interleaved so that each round times
+   // every engine once, with the calibration loop timed before
+   // the first round and after every round. In each round an
+   // engine's throughput is divided by the mean of the
+   // calibration rates on either side of the round, and by the
+   // reference's throughput from the same round; the medians of
+   // both are checked against the baseline, and the best
+   // throughput and calibration rate are printed. With
+   // --update-baseline the medians are recorded instead.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the binary trace cannot be read
+   //
+   //***********************************************************
+   private void measureThroughput() throws IOException
+   {
+      double[] bestOpsPerSecond = new double[ENGINE_NAMES.length];
+      double[][] calibrated = new double[ENGINE_NAMES.length][timedRuns];
+      double[][] ratios = new double[ENGINE_NAMES.length][timedRuns];
+      double[][] roundOpsPerSecond = new double[timedRuns][ENGINE_NAMES.length];
+      double[] calibrationRates = new double[timedRuns + 1];
+
+      timeCalibration();
+
+      int engine;
+      engine = 0;
+
+      while (engine < ENGINE_NAMES.length)
+      {
+         timeEngine(engine);
+         engine = engine + 1;
+      }
+
+      int run;
+      run = 0;
+
+      while (run < timedRuns)
+      {
+         calibrationRates[run] = timeCalibration();
+         engine = 0;
+
+         while (engine < ENGINE_NAMES.length)
+         {
+            roundOpsPerSecond[run][engine] = timeEngine(engine);
+            bestOpsPerSecond[engine] = Math.max(bestOpsPerSecond[engine], roundOpsPerSecond[run][engine]);
+            ratios[engine][run] = roundOpsPerSecond[run][engine] / roundOpsPerSecond[run][REFERENCE];
+            engine = engine + 1;
+         }
+
+         run = run + 1;
+      }
+
+      calibrationRates[timedRuns] = timeCalibration();
+      run = 0;
+
+      while (run < timedRuns)
+      {
+         double roundCalibrationRate = (calibrationRates[run] + calibrationRates[run + 1]) / 2.0;
+         engine = 0;
+
+         while (engine < ENGINE_NAMES.length)
+         {
+            calibrated[engine][run] = roundOpsPerSecond[run][engine] / roundCalibrationRate;
+            engine = engine + 1;
+         }
+
+         run = run + 1;
+      }
+
+      Arrays.sort(calibrationRates);
+      System.out.println(String.format("  %-16s %12.0f steps/s", "calibration", calibrationRates[timedRuns]));
+      engine = REFERENCE;
+
+      while (engine < ENGINE_NAMES.length)
+      {
+         Arrays.sort(calibrated[engine]);
+         Arrays.sort(ratios[engine]);
+         checkBaseline(engine,
+                       bestOpsPerSecond[engine],
+                       calibrated[engine][timedRuns / 2],
+                       ratios[engine][timedRuns / 2]);
+         engine = engine + 1;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: timeCalibration
+   //
+   // Description: Times a fixed calibration loop that keeps a
+   // sorted list of small arrays, scanning it linearly to insert
+   // or remove an entry at each step, much as an allocator scans
+   // its block table. The loop depends only on its seed, so its
+   // rate measures the machine rather than the allocator.
+   //
+   // Parameters: None
+   //
+   // Returns: double - the calibration rate in steps per second
+   //
+   //***********************************************************
+   private double timeCalibration()
+   {
+      Random random = new Random(CALIBRATION_SEED);
+      ArrayList<long[]> table = new ArrayList<long[]>();
+
+      long checksum;
+      checksum = 0L;
+
+      long startTime;
+      startTime = System.nanoTime();
+
+      int step;
+      step = 0;
+
+      while (step < CALIBRATION_STEPS)
+      {
+         long key = random.nextInt(1 << 20);
+
+         int index;
+         index = 0;
+
+         while (index < table.size() && table.get(index)[0] < key)
+         {
+            index = index + 1;
+         }
+
+         if (table.size() < CALIBRATION_TABLE_SIZE || random.nextBoolean())
+         {
+            table.add(index, new long[] {key, step});
+         }
+         else if (index < table.size())
+         {
+            checksum = checksum + table.remove(index)[1];
+         }
+
+         step = step + 1;
+      }
+
+      long elapsedNanos;
+      elapsedNanos = Math.max(1L, System.nanoTime() - startTime);
+
+      // Keeps the loop's result live so the compiler cannot drop it
+      calibrationChecksum = calibrationChecksum + checksum + table.size();
+
+      return CALIBRATION_STEPS * 1.0e9 / elapsedNanos;
+   }
+
+   //***********************************************************
+   //
+   // Method: timeEngine
+   //
+   // Description: Replays the whole trace on a fresh instance of
+   // an engine with allocator output discarded.
+   //
+   // Parameters: int engine - the engine to time
+   //
+   // Returns: double - the throughput in commands per second
+   //
+   // Throws: IOException if the binary trace cannot be read
+   //
+   //***********************************************************
+   private double timeEngine(int engine) throws IOException
+   {
+      startEngine(engine);
+
+      long startTime;
+      startTime = System.nanoTime();
+
+      System.setOut(discardOut);
+
+      try
+      {
+         int index;
+         index = 0;
+
+         while (index < commandCount)
+         {
+            stepEngine(engine, index);
+            index = index + 1;
+         }
+      }
+      finally
+      {
+         System.setOut(originalOut);
+         stopEngine(engine);
+      }
+
+      long elapsedNanos;
+      elapsedNanos = Math.max(1L, System.nanoTime() - startTime);
+
+      return commandCount * 1.0e9 / elapsedNanos;
+   }
+
+   //***********************************************************
+   //
+   // Method: checkBaseline
+   //
+   // Description: Prints an engine's throughput, its calibrated
+   // throughput, and for engines other than the reference its
+   // ratio to the reference. The run fails if the calibrated
+   // throughput or the ratio is below its stored baseline by
+   // more than the tolerance; when updating the baseline both
+   // are stored instead.
+   //
+   // Parameters:
+   //   int engine - the engine that was timed
+   //   double opsPerSecond - the measured throughput
+   //   double calibrated - the throughput divided by the
+   //                       calibration rate
+   //   double ratio - the throughput relative to the reference
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void checkBaseline(int engine, double opsPerSecond, double calibrated, double ratio)
+   {
+      String line = String.format("  %-16s %12.0f ops/s %8.4f calibrated", ENGINE_NAMES[engine], opsPerSecond, calibrated)
+                    + checkBaselineValue(traceName + "." + ENGINE_NAMES[engine] + ".calibrated", calibrated, "%.4f");
+
+      if (engine != REFERENCE)
+      {
+         line = line + String.format(", %.2fx reference", ratio)
+                + checkBaselineValue(traceName + "." + ENGINE_NAMES[engine], ratio, "%.3f");
+      }
+
+      System.out.println(line);
+   }
+
+   //***********************************************************
+   //
+   // Method: checkBaselineValue
+   //
+   // Description: Compares one measured figure with its stored
+   // baseline, counting a failure if it is below the baseline by
+   // more than the tolerance, or stores it when updating the
+   // baseline.
+   //
+   // Parameters:
+   //   String key - the baseline property for the figure
+   //   double value - the measured figure
+   //   String format - the format the figure is stored in
+   //
+   // Returns: String - the text to append to the engine's line
+   //
+   //***********************************************************
+   private String checkBaselineValue(String key, double value, String format)
+   {
+      String stored = baseline.getProperty(key);
+      String result;
+
+      if (updateBaseline)
+      {
+         baseline.setProperty(key, String.format(format, value));
+         result = "";
+      }
+      else if (stored == null)
+      {
+         result = " (no baseline)";
+      }
+      else
+      {
+         double expected = Double.parseDouble(stored);
+         double minimum = expected * (1.0 - tolerance);
+
+         if (value < minimum)
+         {
+            failureCount = failureCount + 1;
+            result = String.format(" FAIL: below baseline " + format + " by %.1f%%",
+                                   expected, (1.0 - value / expected) * 100.0);
+         }
+         else
+         {
+            result = String.format(" (baseline " + format + ")", expected);
+         }
+      }
+
+      return result;
+   }
+
+   //***********************************************************
+   //
+   // Method: startEngine
+   //
+   // Description: Creates a fresh instance of an engine.
+   //
+   // Parameters: int engine - the engine to start
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the binary trace cannot be opened
+   //
+   //***********************************************************
+   private void startEngine(int engine) throws IOException
+   {
+      if (engine == REGIONED)
+      {
+         regionedManager = new RegionedMemoryManager(totalBytes, 1);
+         managers[engine] = regionedManager.getRegion(0);
+      }
+      else
+      {
+         managers[engine] = new MemoryManager(totalBytes);
+      }
+
+      if (engine == BINARY_REPLAY)
+      {
+         binaryReader = new BinaryTraceReader(binaryTraceFile.getPath());
+      }
+      else if (engine == MERGE_DEFERRED)
+      {
+         managers[engine].setCoalescingPolicy('D', 16);
+      }
+      else if (engine == MERGE_BUDGETED)
+      {
+         managers[engine].setCoalescingPolicy('B', 1);
+      }
+      else if (engine == SIZE_CLASS_CACHE)
+      {
+         managers[engine].enableSizeClassCache(7, 1024L * 1024L);
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: stepEngine
+   //
+   // Description: Applies one command of the trace to an
+   // engine. The binary replay engine decodes the command from
+   // the binary trace instead of using the stored arrays.
+   //
+   // Parameters:
+   //   int engine - the engine to drive
+   //   int index - the index of the command
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the binary trace cannot be read
+   //
+   //***********************************************************
+   private void stepEngine(int engine, int index) throws IOException
+   {
+      if (engine == REGIONED)
+      {
+         int opcode = opcodes[index];
+
+         if (opcode == TraceCommand.OP_REQUEST)
+         {
+            regionedManager.requestMemory(processIds[index], sizes[index], strategies[index], lifetimes[index], 0);
+         }
+         else if (opcode == TraceCommand.OP_RELEASE)
+         {
+            regionedManager.releaseMemory(processIds[index]);
+         }
+         else if (opcode == TraceCommand.OP_COMPACT)
+         {
+            regionedManager.compactMemory();
+         }
+         else if (opcode == TraceCommand.OP_STATUS)
+         {
+            regionedManager.printMemoryStatus();
+         }
+      }
+      else if (engine == BINARY_REPLAY)
+      {
+         if (!binaryReader.next())
+         {
+            throw new IOException("binary trace ended early at command " + (index + 1));
+         }
+
+         TraceCommand.apply(managers[engine],
+                            binaryReader.getOpcode(),
+                            binaryReader.getProcessId(),
+                            binaryReader.getSize(),
+                            binaryReader.getStrategy(),
+                            binaryReader.getLifetime(),
+                            binaryReader.getLimit());
+      }
+      else
+      {
+         TraceCommand.apply(managers[engine],
+                            opcodes[index],
+                            processIds[index],
+                            sizes[index],
+                            strategies[index],
+                            lifetimes[index],
+                            0);
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: stopEngine
+   //
+   // Description: Releases any resources held by an engine.
+   //
+   // Parameters: int engine - the engine to stop
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the binary trace cannot be closed
+   //
+   //***********************************************************
+   private void stopEngine(int engine) throws IOException
+   {
+      if (engine == BINARY_REPLAY && binaryReader != null)
+      {
+         binaryReader.close();
+         binaryReader = null;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: generateRandomTrace
+   //
+   // Description: Generates a reproducible random trace from
+   // the seed. Requests use every strategy and lifetime, and
+   // reuse a bounded pool of process ids so that processes hold
+   // several blocks and are released and requested again. A
+   // quarter of the requests take one of a few fixed sizes, so
+   // that freed blocks of the same size are requested again.
+   // Live memory is kept under half of the total, except during
+   // the third quarter of the trace, when requests outnumber
+   // releases and live memory may reach the total; there the
+   // requests that find no hole exercise the failure paths,
+   // flushing the size-class cache, and the outcome check.
+   // Occasional C and STAT commands exercise compaction and
+   // deferred merging.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void generateRandomTrace()
+   {
+      Random random = new Random(seed);
+      startTrace("random-" + seed + "-" + randomCommandCount);
+
+      int processPoolSize;
+      processPoolSize = 512;
+
+      long[] liveBytes = new long[processPoolSize];
+      long totalLive;
+      totalLive = 0L;
+
+      long maxRequest;
+      maxRequest = Math.max(1L, totalBytes / 256L);
+
+      long[] sizeClasses = {Math.max(1L, maxRequest / 1024L),
+                            Math.max(1L, maxRequest / 64L),
+                            Math.max(1L, maxRequest / 8L),
+                            Math.max(1L, maxRequest / 2L)};
+
+      int pressureStart;
+      pressureStart = randomCommandCount / 2;
+
+      int pressureEnd;
+      pressureEnd = randomCommandCount - randomCommandCount / 4;
+
+      char[] strategyChoices = {'F', 'B', 'W'};
+
+      while (commandCount < randomCommandCount)
+      {
+         int process = random.nextInt(processPoolSize);
+         String processId = "P" + process;
+         int choice = random.nextInt(100);
+
+         long liveLimit;
+         liveLimit = totalBytes / 2L;
+
+         int releaseChoices;
+         releaseChoices = 50;
+
+         if (commandCount >= pressureStart && commandCount < pressureEnd)
+         {
+            liveLimit = totalBytes;
+            releaseChoices = 35;
+         }
+
+         if (choice < 1)
+         {
+            addCommand(TraceCommand.OP_COMPACT, null, 0L, 'F', 'L');
+         }
+         else if (choice < 2)
+         {
+            addCommand(TraceCommand.OP_STATUS, null, 0L, 'F', 'L');
+         }
+         else if (choice < releaseChoices && liveBytes[process] > 0L)
+         {
+            addCommand(TraceCommand.OP_RELEASE, processId, 0L, 'F', 'L');
+            totalLive = totalLive - liveBytes[process];
+            liveBytes[process] = 0L;
+         }
+         else
+         {
+            long requestedBytes;
+
+            if (random.nextInt(4) == 0)
+            {
+               requestedBytes = sizeClasses[random.nextInt(sizeClasses.length)];
+            }
+            else
+            {
+               requestedBytes = 1L + (long) (random.nextDouble() * maxRequest);
+            }
+
+            if (totalLive + requestedBytes <= liveLimit)
+            {
+               char lifetime = random.nextInt(5) == 0 ? 'S' : 'L';
+               addCommand(TraceCommand.OP_REQUEST, processId, requestedBytes,
+                          strategyChoices[random.nextInt(3)], lifetime);
+               totalLive = totalLive + requestedBytes;
+               liveBytes[process] = liveBytes[process] + requestedBytes;
+            }
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: loadTrace
+   //
+   // Description: Loads a recorded trace, which may be a binary
+   // trace or a text trace of commands. Commands after an X are
+   // ignored, as they would be on replay. CACHE, MERGE, and
+   // REGION commands are left out, since the harness sets the
+   // mode of every engine itself.
+   //
+   // Parameters: String fileName - the trace to load
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the trace cannot be read
+   //
+   //***********************************************************
+   private void loadTrace(String fileName) throws IOException
+   {
+      startTrace(new File(fileName).getName());
+
+      boolean done;
+      done = false;
+
+      if (isBinaryTrace(fileName))
+      {
+         try (BinaryTraceReader reader = new BinaryTraceReader(fileName))
+         {
+            while (!done && reader.next())
+            {
+               done = reader.getOpcode() == TraceCommand.OP_EXIT;
+
+               if (!done && !isModeCommand(reader.getOpcode()))
+               {
+                  addCommand(reader.getOpcode(), reader.getProcessId(), reader.getSize(),
+                             reader.getStrategy(), reader.getLifetime());
+               }
+            }
+         }
+      }
+      else
+      {
+         ProcessIdDictionary processIdDictionary = new ProcessIdDictionary();
+         TraceParser parser = new TraceParser(processIdDictionary);
+
+         try (BufferedReader reader = new BufferedReader(new FileReader(fileName)))
+         {
+            String line = reader.readLine();
+
+            while (!done && line != null)
+            {
+               if (parser.parse(line))
+               {
+                  done = parser.getOpcode() == TraceCommand.OP_EXIT;
+
+                  if (!done && !isModeCommand(parser.getOpcode()))
+                  {
+                     String processId = null;
+
+                     if (parser.getProcessIndex() >= 0)
+                     {
+                        processId = processIdDictionary.processIdAt(parser.getProcessIndex());
+                     }
+
+                     addCommand(parser.getOpcode(), processId, parser.getSize(),
+                                parser.getStrategy(), parser.getLifetime());
+                  }
+               }
+
+               line = reader.readLine();
+            }
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: isModeCommand
+   //
+   // Description: Reports whether an opcode changes the mode of
+   // the allocator rather than its contents.
+   //
+   // Parameters: int opcode - one of the TraceCommand OP_
+   // constants
+   //
+   // Returns: boolean - true for CACHE, MERGE, and REGION
+   //
+   //***********************************************************
+   private static boolean isModeCommand(int opcode)
+   {
+      return opcode == TraceCommand.OP_CACHE || opcode == TraceCommand.OP_MERGE
+             || opcode == TraceCommand.OP_REGION;
+   }
+
+   //***********************************************************
+   //
+   // Method: isBinaryTrace
+   //
+   // Description: Reports whether a file starts with the magic
+   // bytes of the binary trace format.
+   //
+   // Parameters: String fileName - the file to inspect
+   //
+   // Returns: boolean - true for a binary trace
+   //
+   // Throws: IOException if the file cannot be read
+   //
+   //***********************************************************
+   private static boolean isBinaryTrace(String fileName) throws IOException
+   {
+      byte[] magic = new byte[BinaryTraceWriter.MAGIC.length];
+      int count;
+
+      try (InputStream input = new FileInputStream(fileName))
+      {
+         count = input.readNBytes(magic, 0, magic.length);
+      }
+
+      return count == magic.length && Arrays.equals(magic, BinaryTraceWriter.MAGIC);
+   }
+
+   //***********************************************************
+   //
+   // Method: writeBinaryTrace
+   //
+   // Description: Writes the current trace to a temporary
+   // compressed binary trace for the binary replay engine.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the file cannot be written
+   //
+   //***********************************************************
+   private void writeBinaryTrace() throws IOException
+   {
+      binaryTraceFile = File.createTempFile("harness-", ".trace");
+      binaryTraceFile.deleteOnExit();
+
+      BinaryTraceWriter writer = new BinaryTraceWriter(binaryTraceFile.getPath(), true);
+
+      int index;
+      index = 0;
+
+      while (index < commandCount)
+      {
+         if (opcodes[index] == TraceCommand.OP_REQUEST)
+         {
+            writer.recordRequest(processIds[index], sizes[index], strategies[index], lifetimes[index]);
+         }
+         else if (opcodes[index] == TraceCommand.OP_RELEASE)
+         {
+            writer.recordRelease(processIds[index]);
+         }
+         else
+         {
+            writer.recordCommand(opcodes[index], sizes[index]);
+         }
+
+         index = index + 1;
+      }
+
+      writer.close();
+   }
+
+   //***********************************************************
+   //
+   // Method: startTrace
+   //
+   // Description: Empties the stored trace and names it.
+   //
+   // Parameters: String name - the name of the new trace
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void startTrace(String name)
+   {
+      traceName = name;
+      commandCount = 0;
+      opcodes = new int[1024];
+      processIds = new String[1024];
+      sizes = new long[1024];
+      strategies = new char[1024];
+      lifetimes = new char[1024];
+   }
+
+   //***********************************************************
+   //
+   // Method: addCommand
+   //
+   // Description: Appends a command to the stored trace,
+   // growing the arrays when they are full.
+   //
+   // Parameters:
+   //   int opcode - one of the TraceCommand OP_ constants
+   //   String processId - the process id, or null for none
+   //   long size - the requested bytes or error code
+   //   char strategy - F, B, or W
+   //   char lifetime - L or S
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void addCommand(int opcode, String processId, long size, char strategy, char lifetime)
+   {
+      if (commandCount == opcodes.length)
+      {
+         int newLength = opcodes.length * 2;
+         opcodes = Arrays.copyOf(opcodes, newLength);
+         processIds = Arrays.copyOf(processIds, newLength);
+         sizes = Arrays.copyOf(sizes, newLength);
+         strategies = Arrays.copyOf(strategies, newLength);
+         lifetimes = Arrays.copyOf(lifetimes, newLength);
+      }
+
+      opcodes[commandCount] = opcode;
+      processIds[commandCount] = processId;
+      sizes[commandCount] = size;
+      strategies[commandCount] = strategy;
+      lifetimes[commandCount] = lifetime;
+      commandCount = commandCount + 1;
+   }
+
+   //***********************************************************
+   //
+   // Method: describeCommand
+   //
+   // Description: Formats a stored command as the text command
+   // that produces it.
+   //
+   // Parameters: int index - the index of the command
+   //
+   // Returns: String - the command text
+   //
+   //***********************************************************
+   private String describeCommand(int index)
+   {
+      String description;
+      int opcode = opcodes[index];
+
+      if (opcode == TraceCommand.OP_REQUEST)
+      {
+         description = "RQ " + processIds[index] + " " + sizes[index] + " "
+                       + strategies[index] + " " + lifetimes[index];
+      }
+      else if (opcode == TraceCommand.OP_RELEASE)
+      {
+         description = "RL " + processIds[index];
+      }
+      else if (opcode == TraceCommand.OP_COMPACT)
+      {
+         description = "C";
+      }
+      else if (opcode == TraceCommand.OP_STATUS)
+      {
+         description = "STAT";
+      }
+      else
+      {
+         description = "invalid command";
+      }
+
+      return description;
+   }
+
+   //***********************************************************
+   //
+   // Method: describeBlock
+   //
+   // Description: Formats a block the way STAT prints it.
+   //
+   // Parameters: MemoryBlock block - the block to format
+   //
+   // Returns: String - the block description
+   //
+   //***********************************************************
+   private static String describeBlock(MemoryBlock block)
+   {
+      String owner = block.isFree() ? "Unused" : "Process " + block.getProcessId();
+
+      return "[" + block.getStartAddress() + ":" + block.getEndAddress() + "] " + owner;
+   }
+
+   //***********************************************************
+   //
+   // Method: describeProcess
+   //
+   // Description: Formats a difference in the bytes held by a
+   // process, or in free bytes for the empty process id.
+   //
+   // Parameters:
+   //   String processId - the process id, empty for free memory
+   //   Long actual - the engine's bytes, or null for none
+   //   Long expected - the reference bytes, or null for none
+   //
+   // Returns: String - the difference description
+   //
+   //***********************************************************
+   private static String describeProcess(String processId, Long actual, Long expected)
+   {
+      String owner = processId.isEmpty() ? "free memory" : "process " + processId;
+
+      return owner + " has " + (actual == null ? 0L : actual.longValue()) + " bytes, reference has "
+             + (expected == null ? 0L : expected.longValue());
+   }
+}
@@ -0,0 +1,291 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Replays the same text trace twice, once honouring the RQ
+ * lifetime hints and once treating every request as a plain
+ * long-lived F/B/W request, and reports how the hints change
+ * fragmentation, failed requests, and compaction. A request that
+ * fails although enough memory is free is a victim of
+ * fragmentation; memory is then compacted and the request is
+ * retried. Compactions and the bytes they move are reported in
+ * total, the trace's own C commands included, with the forced
+ * share alongside.
+ * Allocator output is suppressed while replaying.
+ *
+ * Usage: java LifetimeComparison <Megabytes> <TraceFile>
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+public class LifetimeComparison
+{
+   private long totalBytes;
+   private String traceFileName;
+
+   private MemoryManager memoryManager;
+   private long sampleCount;
+   private double fragmentationSum;
+   private long holeCountSum;
+   private long failedRequestCount;
+   private long forcedCompactionCount;
+   private long forcedBytesMoved;
+
+   //***********************************************************
+   //
+   // Method: main
+   //
+   // Description: Validates the command line arguments, then
+   // creates a comparison object and runs it.
+   //
+   // Parameters: String[] args - command line arguments
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public static void main(String[] args)
+   {
+      if (args.length != 2)
+      {
+         System.err.println("Usage: java LifetimeComparison <Megabytes> <TraceFile>");
+      }
+      else
+      {
+         try
+         {
+            long megabytes = Long.parseLong(args[0]);
+
+            if (megabytes <= 0L)
+            {
+               System.err.println("Invalid amount. Please enter a positive integer value.");
+            }
+            else
+            {
+               LifetimeComparison comparison = new LifetimeComparison(megabytes * 1024L * 1024L, args[1]);
+               comparison.run();
+            }
+         }
+         catch (NumberFormatException exception)
+         {
+            System.err.println("Invalid input. Please enter a positive integer value.");
+         }
+         catch (IOException exception)
+         {
+            System.err.println("Error: Could not read trace " + args[1] + ": " + exception.getMessage());
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: LifetimeComparison (Constructor)
+   //
+   // Description: Constructs a comparison of the given trace on
+   // memory of the given size.
+   //
+   // Parameters:
+   //   long totalBytes - the size of memory for each replay
+   //   String traceFileName - the text trace to replay
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public LifetimeComparison(long totalBytes, String traceFileName)
+   {
+      this.totalBytes = totalBytes;
+      this.traceFileName = traceFileName;
+   }
+
+   //***********************************************************
+   //
+   // Method: run
+   //
+   // Description: Replays the trace without and then with the
+   // lifetime hints and prints one report line for each.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the trace cannot be read
+   //
+   //***********************************************************
+   public void run() throws IOException
+   {
+      replay(false);
+      printReport("Plain F/B/W");
+
+      replay(true);
+      printReport("Lifetime hinted");
+   }
+
+   //***********************************************************
+   //
+   // Method: replay
+   //
+   // Description: Replays the whole trace into a new memory
+   // manager, sampling fragmentation after every request and
+   // release. Requests are applied by applyRequest so that
+   // fragmentation can force a compaction.
+   //
+   // Parameters: boolean useHints - false to treat every
+   // request as long-lived
+   //
+   // Returns: N/A
+   //
+   // Throws: IOException if the trace cannot be read
+   //
+   //***********************************************************
+   private void replay(boolean useHints) throws IOException
+   {
+      memoryManager = new MemoryManager(totalBytes);
+      sampleCount = 0L;
+      fragmentationSum = 0.0;
+      holeCountSum = 0L;
+      failedRequestCount = 0L;
+      forcedCompactionCount = 0L;
+      forcedBytesMoved = 0L;
+
+      ProcessIdDictionary processIdDictionary = new ProcessIdDictionary();
+      TraceParser parser = new TraceParser(processIdDictionary);
+
+      PrintStream originalOut = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+      try (BufferedReader reader = new BufferedReader(new FileReader(traceFileName), 1 << 16))
+      {
+         boolean done;
+         done = false;
+
+         String line = reader.readLine();
+
+         while (line != null && !done)
+         {
+            if (parser.parse(line))
+            {
+               int opcode = parser.getOpcode();
+               String processId = null;
+               char lifetime = 'L';
+
+               if (parser.getProcessIndex() >= 0)
+               {
+                  processId = processIdDictionary.processIdAt(parser.getProcessIndex());
+               }
+
+               if (useHints)
+               {
+                  lifetime = parser.getLifetime();
+               }
+
+               if (opcode == TraceCommand.OP_REQUEST)
+               {
+                  applyRequest(processId, parser.getSize(), parser.getStrategy(), lifetime);
+               }
+               else
+               {
+                  done = TraceCommand.apply(memoryManager, opcode, processId,
+                                            parser.getSize(), parser.getStrategy(), lifetime,
+                                            parser.getLimit());
+               }
+
+               if (opcode == TraceCommand.OP_REQUEST || opcode == TraceCommand.OP_RELEASE)
+               {
+                  fragmentationSum = fragmentationSum + memoryManager.getExternalFragmentation();
+                  holeCountSum = holeCountSum + memoryManager.getHoleCount();
+                  sampleCount = sampleCount + 1L;
+               }
+            }
+
+            line = reader.readLine();
+         }
+      }
+      finally
+      {
+         System.setOut(originalOut);
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: applyRequest
+   //
+   // Description: Applies one RQ command. If the request fails
+   // while enough bytes are free, memory is compacted and the
+   // request is tried once more; a request that still fails is
+   // counted as failed.
+   //
+   // Parameters:
+   //   String processId - the id of the requesting process
+   //   long requestedBytes - the number of bytes requested
+   //   char strategy - F, B, or W
+   //   char lifetime - L or S
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void applyRequest(String processId, long requestedBytes, char strategy, char lifetime)
+   {
+      boolean allocated;
+      allocated = memoryManager.tryRequestMemory(processId, requestedBytes, strategy, lifetime);
+
+      if (!allocated && memoryManager.getFreeBytes() >= requestedBytes)
+      {
+         long movedBefore;
+         movedBefore = memoryManager.getCompactionBytesMoved();
+
+         memoryManager.compactMemory();
+         forcedCompactionCount = forcedCompactionCount + 1L;
+         forcedBytesMoved = forcedBytesMoved + memoryManager.getCompactionBytesMoved() - movedBefore;
+
+         allocated = memoryManager.tryRequestMemory(processId, requestedBytes, strategy, lifetime);
+      }
+
+      if (!allocated)
+      {
+         failedRequestCount = failedRequestCount + 1L;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: printReport
+   //
+   // Description: Prints the results of the most recent replay.
+   // Compaction counts and bytes moved cover every compaction of
+   // the replay, forced or from a C command.
+   //
+   // Parameters: String label - the name of the replay
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void printReport(String label)
+   {
+      double averageFragmentation;
+      double averageHoles;
+      averageFragmentation = 0.0;
+      averageHoles = 0.0;
+
+      if (sampleCount > 0L)
+      {
+         averageFragmentation = fragmentationSum / sampleCount;
+         averageHoles = (double) holeCountSum / sampleCount;
+      }
+
+      System.out.println(String.format("%-16s avg fragmentation %6.2f%%, avg holes %8.1f, "
+                                       + "failed requests %d, compactions %d (%d forced), "
+                                       + "bytes moved %d (%d forced)",
+                                       label,
+                                       averageFragmentation * 100.0,
+                                       averageHoles,
+                                       failedRequestCount,
+                                       memoryManager.getCompactionCount(),
+                                       forcedCompactionCount,
+                                       memoryManager.getCompactionBytesMoved(),
+                                       forcedBytesMoved));
+   }
+}
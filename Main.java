@@ -7,15 +7,19 @@
  * Implements a command-line memory allocation simulator supporting
  * First Fit, Best Fit, and Worst Fit algorithms. The system processes
  * memory requests, releases, compaction, and status reporting to model
- * operating system memory management behavior.
+ * operating system memory management behavior. Memory may be split
+ * into several independent regions to model a multi-socket host.
  */
 
+import java.io.IOException;
 import java.util.Scanner;
 
 public class Main
 {
    private Scanner inputScanner;
-   private MemoryManager memoryManager;
+   private RegionedMemoryManager memoryManager;
+   private int regionCount;
+   private BinaryTraceWriter traceRecorder;
 
    //***********************************************************
    //
@@ -79,8 +83,8 @@ public class Main
    //
    // Description: Coordinates the overall flow of the program.
    // It obtains the initial amount of memory from the user,
-   // creates the MemoryManager object, and starts the command
-   // processing loop.
+   // creates the RegionedMemoryManager object, and starts the
+   // command processing loop.
    //
    // Parameters: None
    //
@@ -90,7 +94,7 @@ public class Main
    public void runProgram()
    {
       long totalBytes = readInitialMemoryAmount();
-      memoryManager = new MemoryManager(totalBytes);
+      memoryManager = new RegionedMemoryManager(totalBytes, regionCount);
       processAllocatorCommands();
    }
 
@@ -100,7 +104,10 @@ public class Main
    //
    // Description: Prompts the user for the initial amount of
    // memory in megabytes, validates the input, and returns the
-   // corresponding number of bytes.
+   // corresponding number of bytes. An optional second number
+   // sets the number of regions the memory is split into; it
+   // is stored in regionCount and defaults to one. Any other
+   // extra text is ignored, as it always has been.
    //
    // Parameters: None
    //
@@ -113,6 +120,7 @@ public class Main
       long totalBytes;
       totalBytes = 0L;
       validInput = false;
+      regionCount = 1;
 
       while (!validInput)
       {
@@ -129,11 +137,21 @@ public class Main
             {
                int megabytes = Integer.parseInt(firstToken);
 
-               if (megabytes > 0)
+               if (tokens.length > 1 && tokens[1].matches("[+-]?\\d+"))
+               {
+                  regionCount = Integer.parseInt(tokens[1]);
+               }
+
+               if (megabytes > 0 && regionCount > 0 && regionCount <= megabytes)
                {
                   totalBytes = (long) megabytes * 1024L * 1024L;
                   validInput = true;
                }
+               else if (megabytes > 0)
+               {
+                  System.out.println("Invalid region count. Please enter between 1 and " + megabytes + " regions.");
+                  regionCount = 1;
+               }
                else
                {
                   System.out.println("Invalid amount. Please enter a positive integer value.");
@@ -223,13 +241,30 @@ public class Main
       {
          memoryManager.printMemoryStatus();
       }
+      else if (commandWord.equals("CACHE"))
+      {
+         handleCacheCommand(tokens);
+      }
+      else if (commandWord.equals("MERGE"))
+      {
+         handleMergeCommand(tokens);
+      }
+      else if (commandWord.equals("REGION"))
+      {
+         handleRegionCommand(tokens);
+      }
+      else if (commandWord.equals("RECORD"))
+      {
+         handleRecordCommand(tokens);
+      }
       else if (commandWord.equals("X"))
       {
+         stopRecording();
          shouldExit = true;
       }
       else
       {
-         System.out.println("Invalid command. Please enter RQ, RL, C, STAT, or X.");
+         System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_UNKNOWN_COMMAND));
       }
 
       return shouldExit;
@@ -240,9 +275,10 @@ public class Main
    // Method: handleRequestCommand
    //
    // Description: Validates and processes an RQ command. It
-   // extracts the process id, requested number of bytes, and
-   // allocation strategy, then calls the MemoryManager to
-   // perform the allocation.
+   // extracts the process id, requested number of bytes,
+   // allocation strategy, and optional lifetime hint (L for
+   // long-lived, the default, or S for short-lived), then calls
+   // the MemoryManager to perform the allocation.
    //
    // Parameters: String[] tokens - the tokens that make up the
    // command line
@@ -252,9 +288,9 @@ public class Main
    //***********************************************************
    private void handleRequestCommand(String[] tokens)
    {
-      if (tokens.length != 4)
+      if (tokens.length != 4 && tokens.length != 5)
       {
-         System.out.println("Invalid RQ command. Usage: RQ <ProcessId> <Bytes> <F|B|W>");
+         System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_REQUEST_USAGE));
       }
       else
       {
@@ -266,28 +302,38 @@ public class Main
          {
             long requestedBytes = Long.parseLong(sizeToken);
             char strategy = 'F';
+            char lifetime = 'L';
 
             if (strategyToken.length() > 0)
             {
                strategy = Character.toUpperCase(strategyToken.charAt(0));
             }
 
+            if (tokens.length == 5)
+            {
+               lifetime = Character.toUpperCase(tokens[4].charAt(0));
+            }
+
             if (requestedBytes <= 0L)
             {
-               System.out.println("Requested size must be greater than zero.");
+               System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_REQUEST_NOT_POSITIVE));
             }
             else if (strategy != 'F' && strategy != 'B' && strategy != 'W')
             {
-               System.out.println("Invalid strategy. Use F, B, or W.");
+               System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_REQUEST_STRATEGY));
+            }
+            else if (lifetime != 'L' && lifetime != 'S')
+            {
+               System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_REQUEST_LIFETIME));
             }
             else
             {
-               memoryManager.requestMemory(processId, requestedBytes, strategy);
+               memoryManager.requestMemory(processId, requestedBytes, strategy, lifetime);
             }
          }
          catch (NumberFormatException exception)
          {
-            System.out.println("Invalid size value. Please enter an integer number of bytes.");
+            System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_REQUEST_SIZE));
          }
       }
    }
@@ -310,7 +356,7 @@ public class Main
    {
       if (tokens.length != 2)
       {
-         System.out.println("Invalid RL command. Usage: RL <ProcessId>");
+         System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_RELEASE_USAGE));
       }
       else
       {
@@ -318,5 +364,286 @@ public class Main
          memoryManager.releaseMemory(processId);
       }
    }
-}
 
+   //***********************************************************
+   //
+   // Method: handleCacheCommand
+   //
+   // Description: Validates and processes a CACHE command.
+   // CACHE ON enables the size-class cache, optionally with a
+   // bin capacity and the largest cached block size; CACHE OFF
+   // disables it; CACHE STAT prints its hit rate and the
+   // fragmentation it costs.
+   //
+   // Parameters: String[] tokens - the tokens that make up the
+   // command line
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void handleCacheCommand(String[] tokens)
+   {
+      String usage;
+      usage = TraceCommand.getErrorMessage(TraceCommand.ERROR_CACHE_USAGE);
+
+      if (tokens.length < 2)
+      {
+         System.out.println(usage);
+      }
+      else
+      {
+         String option = tokens[1].toUpperCase();
+
+         if (option.equals("ON") && (tokens.length == 2 || tokens.length == 4))
+         {
+            int binCapacity;
+            long maxCachedSize;
+            binCapacity = 7;
+            maxCachedSize = 1024L * 1024L;
+
+            try
+            {
+               if (tokens.length == 4)
+               {
+                  binCapacity = Integer.parseInt(tokens[2]);
+                  maxCachedSize = Long.parseLong(tokens[3]);
+               }
+
+               if (binCapacity <= 0 || maxCachedSize <= 0L)
+               {
+                  System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_CACHE_NOT_POSITIVE));
+               }
+               else
+               {
+                  memoryManager.enableSizeClassCache(binCapacity, maxCachedSize);
+               }
+            }
+            catch (NumberFormatException exception)
+            {
+               System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_CACHE_SETTINGS));
+            }
+         }
+         else if (option.equals("OFF") && tokens.length == 2)
+         {
+            memoryManager.disableSizeClassCache();
+         }
+         else if (option.equals("STAT") && tokens.length == 2)
+         {
+            memoryManager.printCacheStatistics();
+         }
+         else
+         {
+            System.out.println(usage);
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: handleMergeCommand
+   //
+   // Description: Validates and processes a MERGE command,
+   // which selects the coalescing policy: E (eager), D
+   // (deferred, with an optional free block threshold), or B
+   // (budgeted, with an optional number of merges per merge
+   // pass). The run of free blocks a request is placed in is
+   // always merged, whatever the policy.
+   //
+   // Parameters: String[] tokens - the tokens that make up the
+   // command line
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void handleMergeCommand(String[] tokens)
+   {
+      if (tokens.length < 2 || tokens.length > 3)
+      {
+         System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_MERGE_USAGE));
+      }
+      else
+      {
+         char policy = Character.toUpperCase(tokens[1].charAt(0));
+         int limit;
+         limit = 1;
+
+         if (policy == 'D')
+         {
+            limit = 16;
+         }
+
+         try
+         {
+            if (tokens.length == 3)
+            {
+               limit = Integer.parseInt(tokens[2]);
+            }
+
+            if (tokens[1].length() != 1 || (policy != 'E' && policy != 'D' && policy != 'B'))
+            {
+               System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_MERGE_POLICY));
+            }
+            else if (limit <= 0)
+            {
+               System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_MERGE_NOT_POSITIVE));
+            }
+            else
+            {
+               memoryManager.setCoalescingPolicy(policy, limit);
+            }
+         }
+         catch (NumberFormatException exception)
+         {
+            System.out.println(TraceCommand.getErrorMessage(TraceCommand.ERROR_MERGE_LIMIT));
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: handleRegionCommand
+   //
+   // Description: Validates and processes a REGION command.
+   // REGION L, I, or M selects the placement policy (local-first,
+   // interleave, or most-free); REGION HOME selects the region
+   // that local-first tries first, region 0 by default; REGION
+   // STAT prints per-region utilization and cross-region fallback
+   // counts.
+   //
+   // Parameters: String[] tokens - the tokens that make up the
+   // command line
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void handleRegionCommand(String[] tokens)
+   {
+      if (tokens.length == 3 && tokens[1].equalsIgnoreCase("HOME"))
+      {
+         try
+         {
+            int regionIndex = Integer.parseInt(tokens[2]);
+
+            if (regionIndex < 0 || regionIndex >= regionCount)
+            {
+               System.out.println("Invalid home region. Please enter a region from 0 to " + (regionCount - 1) + ".");
+            }
+            else
+            {
+               memoryManager.setHomeRegion(regionIndex);
+            }
+         }
+         catch (NumberFormatException exception)
+         {
+            System.out.println("Invalid region value. Please enter an integer.");
+         }
+      }
+      else if (tokens.length != 2 || tokens[1].equalsIgnoreCase("HOME"))
+      {
+         System.out.println("Invalid REGION command. Usage: REGION <L|I|M> | REGION HOME <Region> | REGION STAT");
+      }
+      else
+      {
+         String option = tokens[1].toUpperCase();
+
+         if (option.equals("STAT"))
+         {
+            memoryManager.printRegionStatistics();
+         }
+         else if (option.equals("L") || option.equals("I") || option.equals("M"))
+         {
+            memoryManager.setPlacementPolicy(option.charAt(0));
+         }
+         else
+         {
+            System.out.println("Invalid placement policy. Use L, I, or M.");
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: handleRecordCommand
+   //
+   // Description: Validates and processes a RECORD command.
+   // RECORD <File> starts recording every RQ, RL, C, CACHE ON,
+   // CACHE OFF, MERGE, and REGION L, I, M, or HOME command to a
+   // binary trace, compressed when followed by Z, along with the
+   // memory size and region count; RECORD OFF stops recording
+   // and closes the trace.
+   //
+   // Parameters: String[] tokens - the tokens that make up the
+   // command line
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void handleRecordCommand(String[] tokens)
+   {
+      if (tokens.length == 2 && tokens[1].equalsIgnoreCase("OFF"))
+      {
+         if (traceRecorder == null)
+         {
+            System.out.println("Error: No recording in progress.");
+         }
+         else
+         {
+            stopRecording();
+         }
+      }
+      else if (tokens.length == 2 || (tokens.length == 3 && tokens[2].equalsIgnoreCase("Z")))
+      {
+         stopRecording();
+
+         try
+         {
+            traceRecorder = new BinaryTraceWriter(tokens[1],
+                                                  tokens.length == 3,
+                                                  memoryManager.getTotalMemorySize(),
+                                                  regionCount);
+            memoryManager.setTraceRecorder(traceRecorder);
+         }
+         catch (IOException exception)
+         {
+            System.out.println("Error: Could not create trace " + tokens[1] + ": " + exception.getMessage());
+         }
+      }
+      else
+      {
+         System.out.println("Invalid RECORD command. Usage: RECORD <File> [Z] | RECORD OFF");
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: stopRecording
+   //
+   // Description: Detaches and closes the current trace
+   // recorder, if any, and reports how much was recorded.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void stopRecording()
+   {
+      if (traceRecorder != null)
+      {
+         memoryManager.setTraceRecorder(null);
+
+         try
+         {
+            traceRecorder.close();
+            System.out.println("Recorded " + traceRecorder.getCommandCount() + " commands in "
+                               + traceRecorder.getBytesWritten() + " bytes.");
+         }
+         catch (IOException exception)
+         {
+            System.out.println("Error: Could not write trace: " + exception.getMessage());
+         }
+
+         traceRecorder = null;
+      }
+   }
+}
@@ -5,7 +5,8 @@
  *
  * Description:
  * Represents a block of memory with start and end addresses,
- * size, and allocation status.
+ * size, and allocation status. A free block may also be held
+ * by the size-class cache, which hides it from the hole search.
  */
 
 public class MemoryBlock
@@ -14,6 +15,7 @@ public class MemoryBlock
    private long endAddress;
    private boolean free;
    private String processId;
+   private boolean cached;
 
    //***********************************************************
    //
@@ -42,6 +44,7 @@ public class MemoryBlock
       this.endAddress = endAddress;
       this.free = free;
       this.processId = processId;
+      this.cached = false;
    }
 
    // Getters and setters are intentionally simple
@@ -86,6 +89,16 @@ public class MemoryBlock
       this.processId = processId;
    }
 
+   public boolean isCached()
+   {
+      return cached;
+   }
+
+   public void setCached(boolean cached)
+   {
+      this.cached = cached;
+   }
+
    //***********************************************************
    //
    // Method: getSize
@@ -5,7 +5,11 @@
  *
  * Description:
  * Core memory management logic handling allocation strategies,
- * memory release, and compaction.
+ * memory release, compaction, and the coalescing policy that
+ * decides when adjacent free blocks are merged. Requests may carry
+ * a lifetime hint so that short-lived blocks are placed from the
+ * high end of memory, away from long-lived ones. Each operation
+ * is reported to Java Flight Recorder through AllocatorEvents.
  */
 
 import java.util.ArrayList;
@@ -13,7 +17,21 @@ import java.util.ArrayList;
 public class MemoryManager
 {
    private long totalMemorySize;
+   private long freeBytes;
+   private long failedRequestCount;
+   private long compactionCount;
+   private long compactionBytesMoved;
    private ArrayList<MemoryBlock> memoryBlocks;
+   private SizeClassCache sizeClassCache;
+   private char coalescingPolicy;
+   private int mergeThreshold;
+   private int mergeBudget;
+   private int mergeCursor;
+   private int managerId;
+   private long blocksScanned;
+   private long holesMerged;
+   private BinaryTraceWriter traceRecorder;
+   private volatile boolean utilizationRequested;
 
    //***********************************************************
    //
@@ -32,7 +50,12 @@ public class MemoryManager
    public MemoryManager(long totalBytes)
    {
       totalMemorySize = totalBytes;
+      freeBytes = totalBytes;
       memoryBlocks = new ArrayList<MemoryBlock>();
+      coalescingPolicy = 'E';
+      mergeThreshold = 0;
+      mergeBudget = 0;
+      mergeCursor = 0;
 
       long startAddress;
       long endAddress;
@@ -42,7 +65,215 @@ public class MemoryManager
 
       MemoryBlock initialBlock = new MemoryBlock(startAddress, endAddress, true, "");
       memoryBlocks.add(initialBlock);
+
+      managerId = AllocatorEvents.register(this);
+   }
+
+   //***********************************************************
+   //
+   // Method: setCoalescingPolicy
+   //
+   // Description: Selects when adjacent free blocks are merged.
+   // E (eager) merges after every release. D (deferred) makes a
+   // full merge pass only when a release leaves more than limit
+   // free blocks or when memory is compacted or printed. B
+   // (budgeted) makes a pass of at most limit merges per request
+   // or release, resuming where the last pass stopped. Under
+   // every policy a request that is placed in a run of adjacent
+   // free blocks merges that whole run first, whatever the
+   // threshold or budget, so that placement matches eager
+   // merging. Switching back to eager merges all pending free
+   // blocks.
+   //
+   // Parameters:
+   //   char policy - E, D, or B
+   //   int limit - the hole threshold for D or the merge budget
+   //               for B; ignored for E
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void setCoalescingPolicy(char policy, int limit)
+   {
+      if (traceRecorder != null)
+      {
+         traceRecorder.recordMode(TraceCommand.OP_MERGE, policy, limit, 0L);
+      }
+
+      coalescingPolicy = policy;
+      mergeThreshold = 0;
+      mergeBudget = 0;
+      mergeCursor = 0;
+
+      if (policy == 'D')
+      {
+         mergeThreshold = limit;
+      }
+      else if (policy == 'B')
+      {
+         mergeBudget = limit;
+      }
+      else
+      {
+         mergeFreeBlocks();
+      }
+
+      reportUtilization();
+   }
+
+   //***********************************************************
+   //
+   // Method: setTraceRecorder
+   //
+   // Description: Attaches a binary trace writer that records
+   // every RQ, RL, and C command applied through requestMemory,
+   // releaseMemory, and compactMemory, and every change of the
+   // coalescing policy or size-class cache, or detaches it when
+   // null.
+   // The caller remains responsible for closing the writer.
+   //
+   // Parameters: BinaryTraceWriter recorder - the writer, or
+   // null to stop recording
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void setTraceRecorder(BinaryTraceWriter recorder)
+   {
+      traceRecorder = recorder;
+   }
+
+   //***********************************************************
+   //
+   // Method: enableSizeClassCache
+   //
+   // Description: Turns on the size-class cache. Released
+   // blocks of at most maxCachedSize bytes are held in bins of
+   // binCapacity blocks and handed straight back to long-lived
+   // requests of the same size; short-lived requests keep to the
+   // high end of memory and do not use the cache. Coalescing of
+   // cached blocks is deferred until a bin overflows or a request
+   // cannot be satisfied.
+   //
+   // Parameters:
+   //   int binCapacity - the maximum number of blocks per bin
+   //   long maxCachedSize - the largest block size to cache
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void enableSizeClassCache(int binCapacity, long maxCachedSize)
+   {
+      if (traceRecorder != null)
+      {
+         traceRecorder.recordMode(TraceCommand.OP_CACHE, TraceCommand.CACHE_ON, binCapacity, maxCachedSize);
+      }
+
+      if (sizeClassCache != null)
+      {
+         flushSizeClassCache();
+      }
+
+      sizeClassCache = new SizeClassCache(binCapacity, maxCachedSize);
+      reportUtilization();
+   }
+
+   //***********************************************************
+   //
+   // Method: disableSizeClassCache
+   //
+   // Description: Turns off the size-class cache. Any cached
+   // blocks are returned to the free pool and merged.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void disableSizeClassCache()
+   {
+      if (traceRecorder != null)
+      {
+         traceRecorder.recordMode(TraceCommand.OP_CACHE, TraceCommand.CACHE_OFF, 0, 0L);
+      }
+
+      if (sizeClassCache != null)
+      {
+         flushSizeClassCache();
+         sizeClassCache = null;
+      }
+
+      reportUtilization();
+   }
+
+   // Statistics getters are intentionally simple
+
+   public long getTotalMemorySize()
+   {
+      return totalMemorySize;
+   }
+
+   public long getFreeBytes()
+   {
+      return freeBytes;
+   }
+
+   public long getFailedRequestCount()
+   {
+      return failedRequestCount;
+   }
+
+   public long getCompactionCount()
+   {
+      return compactionCount;
+   }
+
+   public long getCompactionBytesMoved()
+   {
+      return compactionBytesMoved;
+   }
+
+   public int getManagerId()
+   {
+      return managerId;
+   }
+
+   public long getBlocksScanned()
+   {
+      return blocksScanned;
    }
+
+   public long getHolesMerged()
+   {
+      return holesMerged;
+   }
+
+   public SizeClassCache getSizeClassCache()
+   {
+      return sizeClassCache;
+   }
+
+   //***********************************************************
+   //
+   // Method: requestMemory
+   //
+   // Description: Attempts to allocate a contiguous block of
+   // memory for the given process using the specified strategy,
+   // treating the request as long-lived.
+   //
+   // Parameters:
+   //   String processId - the id of the requesting process
+   //   long requestedBytes - the number of bytes requested
+   //   char strategy - F, B, or W
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void requestMemory(String processId, long requestedBytes, char strategy)
+   {
+      requestMemory(processId, requestedBytes, strategy, 'L');
+   }
+
    //***********************************************************
    //
    // Method: requestMemory
@@ -50,29 +281,129 @@ public class MemoryManager
    // Description: Attempts to allocate a contiguous block of
    // memory for the given process using the specified strategy.
    // This version allows multiple allocations for the same
-   // process, matching the assignment examples.
+   // process, matching the assignment examples. Long-lived (L)
+   // requests search from the low end of memory and take the
+   // bottom of the chosen hole, as plain requests always have.
+   // Short-lived (S) requests search from the high end and take
+   // the top of the hole, so that their holes do not break up
+   // the long-lived blocks. Short-lived requests therefore never
+   // take a block from the size-class cache, which could hand
+   // them a block from anywhere in memory.
    //
    // Parameters:
    //   String processId - the id of the requesting process
    //   long requestedBytes - the number of bytes requested
    //   char strategy - F, B, or W
+   //   char lifetime - L (long-lived) or S (short-lived)
    //
    // Returns: N/A
    //
    //***********************************************************
-   public void requestMemory(String processId, long requestedBytes, char strategy)
+   public void requestMemory(String processId, long requestedBytes, char strategy, char lifetime)
    {
-      int holeIndex;
-      holeIndex = findHoleIndex(requestedBytes, strategy);
+      if (traceRecorder != null)
+      {
+         traceRecorder.recordRequest(processId, requestedBytes, strategy, lifetime);
+      }
 
-      if (holeIndex == -1)
+      if (!tryRequestMemory(processId, requestedBytes, strategy, lifetime))
       {
          System.out.println("Error: Not enough memory for process " + processId + ".");
+         failedRequestCount = failedRequestCount + 1L;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: tryRequestMemory
+   //
+   // Description: Performs the allocation described for
+   // requestMemory but reports failure to the caller instead of
+   // printing an error, so that a caller managing several
+   // regions can try another region.
+   //
+   // Parameters:
+   //   String processId - the id of the requesting process
+   //   long requestedBytes - the number of bytes requested
+   //   char strategy - F, B, or W
+   //   char lifetime - L (long-lived) or S (short-lived)
+   //
+   // Returns: boolean - true if the memory was allocated
+   //
+   //***********************************************************
+   public boolean tryRequestMemory(String processId, long requestedBytes, char strategy, char lifetime)
+   {
+      AllocatorEvents.Request event = AllocatorEvents.beginRequest();
+
+      long scannedBefore;
+      long mergedBefore;
+      scannedBefore = blocksScanned;
+      mergedBefore = holesMerged;
+
+      boolean allocated;
+      allocated = true;
+
+      boolean fromHighEnd;
+      fromHighEnd = lifetime == 'S';
+
+      MemoryBlock cachedBlock;
+      cachedBlock = null;
+
+      if (sizeClassCache != null && !fromHighEnd)
+      {
+         cachedBlock = sizeClassCache.take(requestedBytes);
+      }
+
+      if (cachedBlock != null)
+      {
+         cachedBlock.setFree(false);
+         cachedBlock.setProcessId(processId);
+         freeBytes = freeBytes - requestedBytes;
       }
       else
       {
-         allocateFromHole(processId, requestedBytes, holeIndex);
+         int holeIndex;
+         holeIndex = findHoleIndex(requestedBytes, strategy, fromHighEnd);
+
+         if (holeIndex == -1 && sizeClassCache != null && !sizeClassCache.isEmpty())
+         {
+            flushSizeClassCache();
+            holeIndex = findHoleIndex(requestedBytes, strategy, fromHighEnd);
+         }
+
+         if (holeIndex == -1)
+         {
+            allocated = false;
+         }
+         else
+         {
+            allocateFromHole(processId, requestedBytes, holeIndex, fromHighEnd);
+            freeBytes = freeBytes - requestedBytes;
+         }
       }
+
+      if (coalescingPolicy == 'B')
+      {
+         mergeFreeBlocksWithBudget();
+      }
+
+      if (event != null && event.shouldCommit())
+      {
+         event.managerId = managerId;
+         event.processId = processId;
+         event.strategy = strategy;
+         event.lifetime = lifetime;
+         event.requestedBytes = requestedBytes;
+         event.blocksScanned = blocksScanned - scannedBefore;
+         event.holesMerged = holesMerged - mergedBefore;
+         event.cacheHit = cachedBlock != null;
+         event.success = allocated;
+         event.commit();
+      }
+
+      reportUtilization();
+
+      return allocated;
    }
 
    //***********************************************************
@@ -82,8 +413,9 @@ public class MemoryManager
    // Description: Releases all memory blocks that have been
    // allocated to the given process. If the process does not
    // exist in the allocation table, an error message is
-   // displayed. Adjacent free blocks are merged after the
-   // release.
+   // displayed. Adjacent free blocks are then merged as the
+   // coalescing policy allows, except for blocks taken by the
+   // size-class cache.
    //
    // Parameters: String processId - the process whose memory
    // should be released
@@ -93,9 +425,55 @@ public class MemoryManager
    //***********************************************************
    public void releaseMemory(String processId)
    {
+      if (traceRecorder != null)
+      {
+         traceRecorder.recordRelease(processId);
+      }
+
+      if (!tryReleaseMemory(processId))
+      {
+         System.out.println("Error: Process " + processId + " not found.");
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: tryReleaseMemory
+   //
+   // Description: Performs the release described for
+   // releaseMemory but reports a missing process to the caller
+   // instead of printing an error.
+   //
+   // Parameters: String processId - the process whose memory
+   // should be released
+   //
+   // Returns: boolean - true if any memory was released
+   //
+   //***********************************************************
+   public boolean tryReleaseMemory(String processId)
+   {
+      AllocatorEvents.Release event = AllocatorEvents.beginRelease();
+
+      long mergedBefore;
+      mergedBefore = holesMerged;
+
       boolean found;
       found = false;
 
+      long releasedBytes;
+      releasedBytes = 0L;
+
+      int holeCount;
+      holeCount = 0;
+
+      long overflowsBefore;
+      overflowsBefore = 0L;
+
+      if (sizeClassCache != null)
+      {
+         overflowsBefore = sizeClassCache.getOverflowCount();
+      }
+
       int index;
       int numberOfBlocks;
       numberOfBlocks = memoryBlocks.size();
@@ -110,19 +488,62 @@ public class MemoryManager
             block.setFree(true);
             block.setProcessId("");
             found = true;
+            releasedBytes = releasedBytes + block.getSize();
+
+            if (sizeClassCache != null)
+            {
+               sizeClassCache.offer(block);
+            }
+         }
+
+         if (block.isFree())
+         {
+            holeCount = holeCount + 1;
          }
 
          index = index + 1;
       }
 
-      if (!found)
+      freeBytes = freeBytes + releasedBytes;
+      blocksScanned = blocksScanned + numberOfBlocks;
+
+      if (found)
       {
-         System.out.println("Error: Process " + processId + " not found.");
+         if (sizeClassCache != null && sizeClassCache.getOverflowCount() > overflowsBefore)
+         {
+            flushSizeClassCache();
+         }
+         else if (coalescingPolicy == 'D')
+         {
+            if (holeCount > mergeThreshold)
+            {
+               mergeFreeBlocks();
+            }
+         }
+         else if (coalescingPolicy == 'B')
+         {
+            mergeFreeBlocksWithBudget();
+         }
+         else
+         {
+            mergeFreeBlocks();
+         }
       }
-      else
+
+      if (event != null && event.shouldCommit())
       {
-         mergeFreeBlocks();
+         event.managerId = managerId;
+         event.processId = processId;
+         event.releasedBytes = releasedBytes;
+         event.blocksScanned = numberOfBlocks;
+         event.holesMerged = holesMerged - mergedBefore;
+         event.success = found;
+         event.commit();
       }
+
+      reportUtilization();
+
+      return found;
    }
 
    //***********************************************************
@@ -132,7 +553,9 @@ public class MemoryManager
    // Description: Compacts memory by moving all allocated
    // blocks towards the beginning of memory, preserving their
    // relative order and creating a single free block at the end
-   // that represents all unused memory.
+   // that represents all unused memory. The number of bytes in
+   // blocks that change address is added to the running total of
+   // bytes moved by compaction.
    //
    // Parameters: None
    //
@@ -141,6 +564,21 @@ public class MemoryManager
    //***********************************************************
    public void compactMemory()
    {
+      if (traceRecorder != null)
+      {
+         traceRecorder.recordCommand(TraceCommand.OP_COMPACT, 0L);
+      }
+
+      AllocatorEvents.Compact event = AllocatorEvents.beginCompact();
+
+      long movedBefore;
+      movedBefore = compactionBytesMoved;
+
+      if (sizeClassCache != null)
+      {
+         sizeClassCache.flush();
+      }
+
       ArrayList<MemoryBlock> compactedList;
       compactedList = new ArrayList<MemoryBlock>();
 
@@ -166,6 +604,11 @@ public class MemoryManager
             newStartAddress = nextFreeAddress;
             newEndAddress = newStartAddress + allocatedSize - 1L;
 
+            if (newStartAddress != block.getStartAddress())
+            {
+               compactionBytesMoved = compactionBytesMoved + allocatedSize;
+            }
+
             MemoryBlock newBlock = new MemoryBlock(newStartAddress,
                                                    newEndAddress,
                                                    false,
@@ -197,6 +640,19 @@ public class MemoryManager
       }
 
       memoryBlocks = compactedList;
+      mergeCursor = 0;
+      compactionCount = compactionCount + 1L;
+      blocksScanned = blocksScanned + numberOfBlocks;
+
+      if (event != null && event.shouldCommit())
+      {
+         event.managerId = managerId;
+         event.blocksScanned = numberOfBlocks;
+         event.bytesMoved = compactionBytesMoved - movedBefore;
+         event.commit();
+      }
+
+      reportUtilization();
    }
 
    //***********************************************************
@@ -205,7 +661,9 @@ public class MemoryManager
    //
    // Description: Prints the regions of memory that are
    // allocated and those that are unused. Each region is
-   // reported with its starting and ending addresses.
+   // reported with its starting and ending addresses. Any
+   // merging deferred by the coalescing policy is done first so
+   // that the output matches eager coalescing.
    //
    // Parameters: None
    //
@@ -214,6 +672,11 @@ public class MemoryManager
    //***********************************************************
    public void printMemoryStatus()
    {
+      if (coalescingPolicy != 'E')
+      {
+         mergeFreeBlocks();
+      }
+
       int index;
       int numberOfBlocks;
       numberOfBlocks = memoryBlocks.size();
@@ -236,6 +699,57 @@ public class MemoryManager
 
          index = index + 1;
       }
+
+      reportUtilization();
+   }
+
+   //***********************************************************
+   //
+   // Method: requestUtilization
+   //
+   // Description: Asks this manager to commit a utilization
+   // event at the end of its next operation. Called from the
+   // flight recorder's periodic hook, which only runs while the
+   // utilization event is enabled; the hook never reads the
+   // block table itself.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void requestUtilization()
+   {
+      utilizationRequested = true;
+   }
+
+   //***********************************************************
+   //
+   // Method: reportUtilization
+   //
+   // Description: Commits the utilization event asked for by
+   // requestUtilization, at most once per request, with the
+   // figures as they stand after the current operation. The
+   // event is built on the thread that changes the manager, so
+   // no lock is needed, and until a request arrives each
+   // operation costs a single volatile read.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void reportUtilization()
+   {
+      if (utilizationRequested)
+      {
+         utilizationRequested = false;
+         AllocatorEvents.commitUtilization(managerId,
+                                           totalMemorySize,
+                                           freeBytes,
+                                           getHoleCount(),
+                                           getLargestHoleSize());
+      }
    }
 
    //***********************************************************
@@ -245,20 +759,31 @@ public class MemoryManager
    // Description: Finds the index of a free block (hole) that
    // can satisfy a request of the given size using the specified
    // strategy: F (first fit), B (best fit), or W (worst fit).
-   // If no suitable hole exists, -1 is returned.
+   // Each run of adjacent free blocks is judged as one hole, so
+   // that merging deferred by the coalescing policy does not
+   // change where a request is placed; the chosen run is merged
+   // into a single block before its index is returned. When
+   // searching from the high end, first fit takes the last
+   // suitable hole and ties go to the higher hole. Blocks held by
+   // the size-class cache are skipped. If no suitable hole
+   // exists, -1 is returned.
    //
    // Parameters:
    //   long requestedBytes - the requested block size
    //   char strategy - F, B, or W
+   //   boolean fromHighEnd - true to search from the end of
+   //                         memory towards the beginning
    //
    // Returns: int - the index of the selected hole, or -1 if
    // none was found
    //
    //***********************************************************
-   private int findHoleIndex(long requestedBytes, char strategy)
+   private int findHoleIndex(long requestedBytes, char strategy, boolean fromHighEnd)
    {
-      int selectedIndex;
-      selectedIndex = -1;
+      int selectedFirst;
+      int selectedLast;
+      selectedFirst = -1;
+      selectedLast = -1;
 
       long bestSize;
       long worstSize;
@@ -266,52 +791,133 @@ public class MemoryManager
       bestSize = Long.MAX_VALUE;
       worstSize = 0L;
 
+      int runFirst;
+      int runLast;
+      long runSize;
+      runFirst = -1;
+      runLast = -1;
+      runSize = 0L;
+
       int index;
+      int step;
       int numberOfBlocks;
       numberOfBlocks = memoryBlocks.size();
-      index = 0;
 
-      while (index < numberOfBlocks)
+      if (fromHighEnd)
       {
-         MemoryBlock block = memoryBlocks.get(index);
+         index = numberOfBlocks - 1;
+         step = -1;
+      }
+      else
+      {
+         index = 0;
+         step = 1;
+      }
 
-         if (block.isFree())
+      while (index >= -1 && index <= numberOfBlocks)
+      {
+         boolean inRun;
+         inRun = false;
+
+         if (index >= 0 && index < numberOfBlocks)
          {
-            long blockSize;
-            blockSize = block.getSize();
+            MemoryBlock block = memoryBlocks.get(index);
+            inRun = block.isFree() && !block.isCached();
+
+            if (inRun)
+            {
+               if (runSize == 0L)
+               {
+                  runFirst = index;
+               }
 
-            if (blockSize >= requestedBytes)
+               runLast = index;
+               runSize = runSize + block.getSize();
+            }
+         }
+
+         if (!inRun && runSize > 0L)
+         {
+            if (runSize >= requestedBytes)
             {
+               boolean selected;
+               selected = false;
+
                if (strategy == 'F')
                {
-                  if (selectedIndex == -1)
-                  {
-                     selectedIndex = index;
-                  }
+                  selected = selectedFirst == -1;
                }
                else if (strategy == 'B')
                {
-                  if (blockSize < bestSize)
+                  if (runSize < bestSize)
                   {
-                     bestSize = blockSize;
-                     selectedIndex = index;
+                     bestSize = runSize;
+                     selected = true;
                   }
                }
                else if (strategy == 'W')
                {
-                  if (blockSize > worstSize)
+                  if (runSize > worstSize)
                   {
-                     worstSize = blockSize;
-                     selectedIndex = index;
+                     worstSize = runSize;
+                     selected = true;
                   }
                }
+
+               if (selected)
+               {
+                  selectedFirst = Math.min(runFirst, runLast);
+                  selectedLast = Math.max(runFirst, runLast);
+               }
             }
+
+            runSize = 0L;
          }
 
-         index = index + 1;
+         index = index + step;
+      }
+
+      blocksScanned = blocksScanned + numberOfBlocks;
+
+      if (selectedFirst != -1 && selectedLast > selectedFirst)
+      {
+         mergeFreeRun(selectedFirst, selectedLast);
       }
 
-      return selectedIndex;
+      return selectedFirst;
+   }
+
+   //***********************************************************
+   //
+   // Method: mergeFreeRun
+   //
+   // Description: Merges a run of adjacent free blocks into the
+   // first block of the run.
+   //
+   // Parameters:
+   //   int firstIndex - the index of the first block of the run
+   //   int lastIndex - the index of the last block of the run
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void mergeFreeRun(int firstIndex, int lastIndex)
+   {
+      AllocatorEvents.Merge event = AllocatorEvents.beginMerge();
+
+      int mergeCount;
+      mergeCount = lastIndex - firstIndex;
+
+      MemoryBlock firstBlock = memoryBlocks.get(firstIndex);
+      firstBlock.setEndAddress(memoryBlocks.get(lastIndex).getEndAddress());
+      memoryBlocks.subList(firstIndex + 1, lastIndex + 1).clear();
+
+      if (mergeCursor > firstIndex)
+      {
+         mergeCursor = Math.max(firstIndex, mergeCursor - mergeCount);
+      }
+
+      recordMergePass(event, false, mergeCount, mergeCount);
    }
 
    //***********************************************************
@@ -322,17 +928,20 @@ public class MemoryManager
    // appropriate free block (hole) index has been selected. It
    // either converts the hole entirely into an allocated block
    // or splits it into an allocated block followed by a smaller
-   // free block.
+   // free block. When allocating from the high end the smaller
+   // free block comes first and the allocated block takes the
+   // top of the hole.
    //
    // Parameters:
    //   String processId - the id of the requesting process
    //   long requestedBytes - the requested block size
    //   int holeIndex - the index of the selected free block
+   //   boolean fromHighEnd - true to take the top of the hole
    //
    // Returns: N/A
    //
    //***********************************************************
-   private void allocateFromHole(String processId, long requestedBytes, int holeIndex)
+   private void allocateFromHole(String processId, long requestedBytes, int holeIndex, boolean fromHighEnd)
    {
       MemoryBlock hole = memoryBlocks.get(holeIndex);
 
@@ -356,6 +965,23 @@ public class MemoryManager
          hole.setFree(false);
          hole.setProcessId(processId);
       }
+      else if (fromHighEnd)
+      {
+         newAllocStart = holeEnd - requestedBytes + 1L;
+         newAllocEnd = holeEnd;
+
+         MemoryBlock remainingHole = new MemoryBlock(holeStart,
+                                                     newAllocStart - 1L,
+                                                     true,
+                                                     "");
+         MemoryBlock allocatedBlock = new MemoryBlock(newAllocStart,
+                                                      newAllocEnd,
+                                                      false,
+                                                      processId);
+
+         memoryBlocks.set(holeIndex, remainingHole);
+         memoryBlocks.add(holeIndex + 1, allocatedBlock);
+      }
       else
       {
          remainingStart = newAllocEnd + 1L;
@@ -382,7 +1008,8 @@ public class MemoryManager
    //
    // Description: Scans the list of memory blocks and merges
    // any adjacent free blocks into single larger free blocks to
-   // keep the list as compact as possible.
+   // keep the list as compact as possible. Blocks held by the
+   // size-class cache are left alone.
    //
    // Parameters: None
    //
@@ -391,6 +1018,13 @@ public class MemoryManager
    //***********************************************************
    private void mergeFreeBlocks()
    {
+      AllocatorEvents.Merge event = AllocatorEvents.beginMerge();
+
+      int mergeCount;
+      int scanCount;
+      mergeCount = 0;
+      scanCount = 0;
+
       int index;
       int lastIndex;
 
@@ -399,21 +1033,321 @@ public class MemoryManager
 
       while (index < lastIndex)
       {
+         scanCount = scanCount + 1;
+
          MemoryBlock currentBlock = memoryBlocks.get(index);
          MemoryBlock nextBlock = memoryBlocks.get(index + 1);
 
-         if (currentBlock.isFree() && nextBlock.isFree())
+         if (currentBlock.isFree() && !currentBlock.isCached()
+             && nextBlock.isFree() && !nextBlock.isCached())
          {
             long newEndAddress;
             newEndAddress = nextBlock.getEndAddress();
             currentBlock.setEndAddress(newEndAddress);
             memoryBlocks.remove(index + 1);
             lastIndex = memoryBlocks.size() - 1;
+            mergeCount = mergeCount + 1;
          }
          else
          {
             index = index + 1;
          }
       }
+
+      recordMergePass(event, false, scanCount, mergeCount);
+   }
+
+   //***********************************************************
+   //
+   // Method: mergeFreeBlocksWithBudget
+   //
+   // Description: Merges at most mergeBudget pairs of adjacent
+   // free blocks, starting where the previous budgeted pass
+   // stopped. When the end of the list is reached the next pass
+   // starts again from the beginning.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void mergeFreeBlocksWithBudget()
+   {
+      AllocatorEvents.Merge event = AllocatorEvents.beginMerge();
+
+      int mergeCount;
+      int scanCount;
+      mergeCount = 0;
+      scanCount = 0;
+
+      int index;
+      int lastIndex;
+
+      lastIndex = memoryBlocks.size() - 1;
+      index = mergeCursor;
+
+      while (index < lastIndex && mergeCount < mergeBudget)
+      {
+         scanCount = scanCount + 1;
+
+         MemoryBlock currentBlock = memoryBlocks.get(index);
+         MemoryBlock nextBlock = memoryBlocks.get(index + 1);
+
+         if (currentBlock.isFree() && !currentBlock.isCached()
+             && nextBlock.isFree() && !nextBlock.isCached())
+         {
+            long newEndAddress;
+            newEndAddress = nextBlock.getEndAddress();
+            currentBlock.setEndAddress(newEndAddress);
+            memoryBlocks.remove(index + 1);
+            lastIndex = memoryBlocks.size() - 1;
+            mergeCount = mergeCount + 1;
+         }
+         else
+         {
+            index = index + 1;
+         }
+      }
+
+      if (index >= lastIndex)
+      {
+         mergeCursor = 0;
+      }
+      else
+      {
+         mergeCursor = index;
+      }
+
+      recordMergePass(event, true, scanCount, mergeCount);
+   }
+
+   //***********************************************************
+   //
+   // Method: recordMergePass
+   //
+   // Description: Adds the work done by a merge pass to the
+   // running totals and commits its flight recorder event if the
+   // recording wants it.
+   //
+   // Parameters:
+   //   AllocatorEvents.Merge event - the event begun by the pass,
+   //                                 or null when not recording
+   //   boolean budgeted - true for a budgeted pass
+   //   int scanCount - the block pairs examined
+   //   int mergeCount - the pairs merged
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void recordMergePass(AllocatorEvents.Merge event, boolean budgeted, int scanCount, int mergeCount)
+   {
+      blocksScanned = blocksScanned + scanCount;
+      holesMerged = holesMerged + mergeCount;
+
+      if (event != null && event.shouldCommit())
+      {
+         event.managerId = managerId;
+         event.policy = coalescingPolicy;
+         event.budgeted = budgeted;
+         event.blocksScanned = scanCount;
+         event.holesMerged = mergeCount;
+         event.commit();
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: flushSizeClassCache
+   //
+   // Description: Returns all cached blocks to the free pool
+   // and performs the coalescing that the cache had deferred.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void flushSizeClassCache()
+   {
+      sizeClassCache.flush();
+      mergeFreeBlocks();
+   }
+
+   //***********************************************************
+   //
+   // Method: printCacheStatistics
+   //
+   // Description: Prints the size-class cache hit rate along
+   // with the fragmentation it currently costs: the bytes held
+   // back from coalescing and the share of free memory that is
+   // not available as one contiguous hole.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void printCacheStatistics()
+   {
+      if (sizeClassCache == null)
+      {
+         System.out.println("Size-class cache is disabled.");
+      }
+      else
+      {
+         long largestHole;
+         largestHole = getLargestHoleSize();
+
+         System.out.println("Cache hits: " + sizeClassCache.getHitCount()
+                            + ", misses: " + sizeClassCache.getMissCount()
+                            + String.format(", hit rate: %.2f%%", sizeClassCache.getHitRate() * 100.0));
+         System.out.println("Cache overflows: " + sizeClassCache.getOverflowCount()
+                            + ", flushes: " + sizeClassCache.getFlushCount());
+         System.out.println("Cached blocks: " + sizeClassCache.getCachedBlockCount()
+                            + " (" + sizeClassCache.getCachedBytes() + " bytes held back from coalescing)");
+         System.out.println("Free holes: " + getHoleCount()
+                            + ", largest usable hole: " + largestHole
+                            + " of " + freeBytes + " free bytes"
+                            + String.format(" (%.2f%% external fragmentation)", getExternalFragmentation() * 100.0));
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: getHoleCount
+   //
+   // Description: Counts the free blocks (holes) in memory,
+   // including any held by the size-class cache.
+   //
+   // Parameters: None
+   //
+   // Returns: int - the number of free blocks
+   //
+   //***********************************************************
+   public int getHoleCount()
+   {
+      int holeCount;
+      holeCount = 0;
+
+      int index;
+      int numberOfBlocks;
+      numberOfBlocks = memoryBlocks.size();
+      index = 0;
+
+      while (index < numberOfBlocks)
+      {
+         if (memoryBlocks.get(index).isFree())
+         {
+            holeCount = holeCount + 1;
+         }
+
+         index = index + 1;
+      }
+
+      return holeCount;
+   }
+
+   //***********************************************************
+   //
+   // Method: getLargestHoleSize
+   //
+   // Description: Finds the size of the largest free block that
+   // a request could use. Blocks held by the size-class cache
+   // are not counted.
+   //
+   // Parameters: None
+   //
+   // Returns: long - the size of the largest usable hole, or 0
+   // if there is none
+   //
+   //***********************************************************
+   public long getLargestHoleSize()
+   {
+      long largestHole;
+      largestHole = 0L;
+
+      int index;
+      int numberOfBlocks;
+      numberOfBlocks = memoryBlocks.size();
+      index = 0;
+
+      while (index < numberOfBlocks)
+      {
+         MemoryBlock block = memoryBlocks.get(index);
+
+         if (block.isFree() && !block.isCached() && block.getSize() > largestHole)
+         {
+            largestHole = block.getSize();
+         }
+
+         index = index + 1;
+      }
+
+      return largestHole;
+   }
+
+   //***********************************************************
+   //
+   // Method: getExternalFragmentation
+   //
+   // Description: Computes the share of free memory that is not
+   // available as the largest usable hole. The result is 0.0
+   // when all free memory is one usable hole.
+   //
+   // Parameters: None
+   //
+   // Returns: double - the external fragmentation between 0.0
+   // and 1.0
+   //
+   //***********************************************************
+   public double getExternalFragmentation()
+   {
+      double fragmentation;
+      fragmentation = 0.0;
+
+      if (freeBytes > 0L)
+      {
+         fragmentation = 1.0 - ((double) getLargestHoleSize() / (double) freeBytes);
+      }
+
+      return fragmentation;
+   }
+
+   //***********************************************************
+   //
+   // Method: getBlockSnapshot
+   //
+   // Description: Returns a copy of the block table, in address
+   // order. Changing the copy does not affect this manager.
+   //
+   // Parameters: None
+   //
+   // Returns: ArrayList<MemoryBlock> - copies of every block
+   //
+   //***********************************************************
+   public ArrayList<MemoryBlock> getBlockSnapshot()
+   {
+      ArrayList<MemoryBlock> snapshot;
+      snapshot = new ArrayList<MemoryBlock>(memoryBlocks.size());
+
+      int index;
+      int numberOfBlocks;
+      numberOfBlocks = memoryBlocks.size();
+      index = 0;
+
+      while (index < numberOfBlocks)
+      {
+         MemoryBlock block = memoryBlocks.get(index);
+         MemoryBlock copy = new MemoryBlock(block.getStartAddress(),
+                                            block.getEndAddress(),
+                                            block.isFree(),
+                                            block.getProcessId());
+         copy.setCached(block.isCached());
+         snapshot.add(copy);
+
+         index = index + 1;
+      }
+
+      return snapshot;
    }
 }
@@ -0,0 +1,420 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Replays a text trace of allocator commands with parsing and
+ * allocation on separate threads. A parser thread decodes each
+ * line into the command ring buffer while an apply thread drains
+ * the buffer in batches into the MemoryManager, so the cost of
+ * parsing overlaps with the cost of allocation. Throughput and
+ * decode-to-apply latency are reported periodically on standard
+ * error so that standard output matches the interactive prompt.
+ *
+ * Usage: java PipelinedReplay <Megabytes> <TraceFile>
+ *                             [<BatchSize> <ReportMillis>]
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+public class PipelinedReplay
+{
+   private static final int RING_CAPACITY = 4096;
+
+   private MemoryManager memoryManager;
+   private String traceFileName;
+   private int batchSize;
+   private long reportIntervalNanos;
+
+   private ProcessIdDictionary processIdDictionary;
+   private CommandRingBuffer ringBuffer;
+   private IOException parseFailure;
+   private volatile RuntimeException threadFailure;
+
+   private long appliedCount;
+   private long totalLatencyNanos;
+   private long maxLatencyNanos;
+
+   //***********************************************************
+   //
+   // Method: main
+   //
+   // Description: Validates the command line arguments, then
+   // creates a replay object and runs it.
+   //
+   // Parameters: String[] args - command line arguments
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public static void main(String[] args)
+   {
+      if (args.length != 2 && args.length != 4)
+      {
+         System.err.println("Usage: java PipelinedReplay <Megabytes> <TraceFile> [<BatchSize> <ReportMillis>]");
+      }
+      else
+      {
+         try
+         {
+            long totalBytes = Long.parseLong(args[0]) * 1024L * 1024L;
+            int batchSize = 256;
+            long reportMillis = 1000L;
+
+            if (args.length == 4)
+            {
+               batchSize = Integer.parseInt(args[2]);
+               reportMillis = Long.parseLong(args[3]);
+            }
+
+            if (totalBytes <= 0L || batchSize <= 0 || reportMillis <= 0L)
+            {
+               System.err.println("All numeric arguments must be greater than zero.");
+            }
+            else
+            {
+               PipelinedReplay replay = new PipelinedReplay(new MemoryManager(totalBytes),
+                                                            args[1],
+                                                            batchSize,
+                                                            reportMillis);
+               replay.run();
+            }
+         }
+         catch (NumberFormatException exception)
+         {
+            System.err.println("Invalid numeric argument. Please enter integer values.");
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: PipelinedReplay (Constructor)
+   //
+   // Description: Constructs a replay of the given trace file
+   // into the given memory manager.
+   //
+   // Parameters:
+   //   MemoryManager memoryManager - the allocator to drive
+   //   String traceFileName - the text trace to replay
+   //   int batchSize - the most commands applied per batch
+   //   long reportMillis - the interval between reports
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public PipelinedReplay(MemoryManager memoryManager,
+                          String traceFileName,
+                          int batchSize,
+                          long reportMillis)
+   {
+      this.memoryManager = memoryManager;
+      this.traceFileName = traceFileName;
+      this.batchSize = batchSize;
+      this.reportIntervalNanos = reportMillis * 1000000L;
+
+      processIdDictionary = new ProcessIdDictionary();
+      ringBuffer = new CommandRingBuffer(RING_CAPACITY);
+   }
+
+   //***********************************************************
+   //
+   // Method: run
+   //
+   // Description: Starts the parser and apply threads, waits
+   // for both to finish, and prints the final summary.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void run()
+   {
+      Thread parserThread = new Thread(this::parseTrace, "trace-parser");
+      Thread applyThread = new Thread(this::applyCommands, "trace-apply");
+
+      long startTime;
+      startTime = System.nanoTime();
+
+      parserThread.start();
+      applyThread.start();
+
+      try
+      {
+         parserThread.join();
+         applyThread.join();
+      }
+      catch (InterruptedException exception)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      long elapsedNanos;
+      elapsedNanos = System.nanoTime() - startTime;
+
+      if (parseFailure != null)
+      {
+         System.err.println("Error: Could not read trace " + traceFileName + ": " + parseFailure.getMessage());
+      }
+
+      if (threadFailure != null)
+      {
+         System.err.println("Error: Replay of " + traceFileName + " stopped early: " + threadFailure);
+      }
+
+      printReport("Total", appliedCount, elapsedNanos, appliedCount, totalLatencyNanos, maxLatencyNanos);
+      System.err.println("Backpressure waits: " + ringBuffer.getFullWaitCount());
+   }
+
+   //***********************************************************
+   //
+   // Method: parseTrace
+   //
+   // Description: Body of the parser thread. Reads the trace
+   // line by line and decodes each command into the ring buffer.
+   // An exit command is always the last command put, whether it
+   // came from the trace, from reaching the end of the file, or
+   // from a failure, so the apply thread always finishes. Parsing
+   // stops if the apply thread aborts the ring buffer.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void parseTrace()
+   {
+      TraceParser parser = new TraceParser(processIdDictionary);
+      boolean done;
+      done = false;
+
+      try (BufferedReader reader = new BufferedReader(new FileReader(traceFileName), 1 << 16))
+      {
+         String line = reader.readLine();
+
+         while (line != null && !done)
+         {
+            if (parser.parse(line))
+            {
+               boolean stored = ringBuffer.put(parser.getOpcode(),
+                                               parser.getProcessIndex(),
+                                               parser.getSize(),
+                                               parser.getStrategy(),
+                                               parser.getLifetime(),
+                                               parser.getLimit(),
+                                               System.nanoTime());
+               done = !stored || parser.getOpcode() == TraceCommand.OP_EXIT;
+            }
+
+            line = reader.readLine();
+         }
+      }
+      catch (IOException exception)
+      {
+         parseFailure = exception;
+      }
+      catch (RuntimeException exception)
+      {
+         recordFailure(exception);
+      }
+      finally
+      {
+         if (!done)
+         {
+            ringBuffer.put(TraceCommand.OP_EXIT, -1, 0L, 'F', 'L', 0, System.nanoTime());
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: applyCommands
+   //
+   // Description: Body of the apply thread. Drains the ring
+   // buffer in batches, applies each command to the memory
+   // manager, and prints a report whenever the report interval
+   // has passed. If a command fails the ring buffer is aborted
+   // so that the parser thread stops as well.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void applyCommands()
+   {
+      boolean done;
+      done = false;
+
+      try
+      {
+         drainCommands();
+         done = true;
+      }
+      catch (RuntimeException exception)
+      {
+         recordFailure(exception);
+      }
+      finally
+      {
+         if (!done)
+         {
+            ringBuffer.abort();
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: recordFailure
+   //
+   // Description: Keeps the first unexpected failure of either
+   // thread for the final report.
+   //
+   // Parameters: RuntimeException exception - the failure
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private synchronized void recordFailure(RuntimeException exception)
+   {
+      if (threadFailure == null)
+      {
+         threadFailure = exception;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: drainCommands
+   //
+   // Description: Applies commands from the ring buffer until
+   // an exit command is applied, reporting as it goes.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void drainCommands()
+   {
+      boolean done;
+      done = false;
+
+      long intervalStart;
+      long intervalCount;
+      long intervalLatencyNanos;
+      long intervalMaxLatencyNanos;
+
+      intervalStart = System.nanoTime();
+      intervalCount = 0L;
+      intervalLatencyNanos = 0L;
+      intervalMaxLatencyNanos = 0L;
+
+      while (!done)
+      {
+         int available;
+         available = ringBuffer.awaitAvailable(batchSize);
+
+         int offset;
+         offset = 0;
+
+         while (offset < available && !done)
+         {
+            int processIndex = ringBuffer.processIndexAt(offset);
+            String processId = null;
+
+            if (processIndex >= 0)
+            {
+               processId = processIdDictionary.processIdAt(processIndex);
+            }
+
+            done = TraceCommand.apply(memoryManager,
+                                      ringBuffer.opcodeAt(offset),
+                                      processId,
+                                      ringBuffer.sizeAt(offset),
+                                      ringBuffer.strategyAt(offset),
+                                      ringBuffer.lifetimeAt(offset),
+                                      ringBuffer.limitAt(offset));
+
+            long latencyNanos;
+            latencyNanos = System.nanoTime() - ringBuffer.timestampAt(offset);
+            intervalLatencyNanos = intervalLatencyNanos + latencyNanos;
+            intervalMaxLatencyNanos = Math.max(intervalMaxLatencyNanos, latencyNanos);
+            intervalCount = intervalCount + 1L;
+
+            offset = offset + 1;
+         }
+
+         ringBuffer.release(offset);
+
+         long now;
+         now = System.nanoTime();
+
+         if (done || now - intervalStart >= reportIntervalNanos)
+         {
+            appliedCount = appliedCount + intervalCount;
+            totalLatencyNanos = totalLatencyNanos + intervalLatencyNanos;
+            maxLatencyNanos = Math.max(maxLatencyNanos, intervalMaxLatencyNanos);
+
+            if (!done)
+            {
+               printReport("Interval", intervalCount, now - intervalStart, appliedCount,
+                           intervalLatencyNanos, intervalMaxLatencyNanos);
+            }
+
+            intervalStart = now;
+            intervalCount = 0L;
+            intervalLatencyNanos = 0L;
+            intervalMaxLatencyNanos = 0L;
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: printReport
+   //
+   // Description: Prints one throughput and latency report line
+   // on standard error.
+   //
+   // Parameters:
+   //   String label - the kind of report
+   //   long count - the commands applied in the period
+   //   long elapsedNanos - the length of the period
+   //   long totalCount - the commands applied so far
+   //   long latencyNanos - the summed latency in the period
+   //   long maxNanos - the largest latency in the period
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void printReport(String label,
+                            long count,
+                            long elapsedNanos,
+                            long totalCount,
+                            long latencyNanos,
+                            long maxNanos)
+   {
+      double opsPerSecond;
+      double averageMicros;
+      opsPerSecond = 0.0;
+      averageMicros = 0.0;
+
+      if (elapsedNanos > 0L)
+      {
+         opsPerSecond = count * 1.0e9 / elapsedNanos;
+      }
+
+      if (count > 0L)
+      {
+         averageMicros = latencyNanos / 1000.0 / count;
+      }
+
+      System.err.println(String.format("%s: %d ops (%d total), %.0f ops/s, latency avg %.1f us, max %.1f us",
+                                       label, count, totalCount, opsPerSecond,
+                                       averageMicros, maxNanos / 1000.0));
+   }
+}
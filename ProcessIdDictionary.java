@@ -0,0 +1,115 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Maps process id strings to small integer indexes so that
+ * decoded commands can carry an int instead of a string. One
+ * thread adds entries; other threads may look entries up once
+ * they have received an index through a properly published
+ * hand-off such as the command ring buffer.
+ */
+
+import java.util.HashMap;
+
+public class ProcessIdDictionary
+{
+   private HashMap<String, Integer> indexByProcessId;
+   private volatile String[] processIds;
+   private int processIdCount;
+
+   //***********************************************************
+   //
+   // Method: ProcessIdDictionary (Constructor)
+   //
+   // Description: Constructs an empty dictionary.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public ProcessIdDictionary()
+   {
+      indexByProcessId = new HashMap<String, Integer>();
+      processIds = new String[16];
+      processIdCount = 0;
+   }
+
+   //***********************************************************
+   //
+   // Method: size
+   //
+   // Description: Returns the number of process ids that have
+   // been assigned an index. Only the owning thread may call
+   // this method.
+   //
+   // Parameters: None
+   //
+   // Returns: int - the number of process ids
+   //
+   //***********************************************************
+   public int size()
+   {
+      return processIdCount;
+   }
+
+   //***********************************************************
+   //
+   // Method: indexOf
+   //
+   // Description: Returns the index assigned to the process id,
+   // assigning the next free index if it has not been seen
+   // before. Only the owning thread may call this method.
+   //
+   // Parameters: String processId - the process id to look up
+   //
+   // Returns: int - the index of the process id
+   //
+   //***********************************************************
+   public int indexOf(String processId)
+   {
+      Integer existingIndex = indexByProcessId.get(processId);
+      int index;
+
+      if (existingIndex != null)
+      {
+         index = existingIndex.intValue();
+      }
+      else
+      {
+         index = processIdCount;
+         String[] table = processIds;
+
+         if (index == table.length)
+         {
+            String[] largerTable = new String[table.length * 2];
+            System.arraycopy(table, 0, largerTable, 0, table.length);
+            table = largerTable;
+         }
+
+         table[index] = processId;
+         processIds = table;
+         processIdCount = index + 1;
+         indexByProcessId.put(processId, index);
+      }
+
+      return index;
+   }
+
+   //***********************************************************
+   //
+   // Method: processIdAt
+   //
+   // Description: Returns the process id stored at the given
+   // index.
+   //
+   // Parameters: int index - an index returned by indexOf
+   //
+   // Returns: String - the process id
+   //
+   //***********************************************************
+   public String processIdAt(int index)
+   {
+      return processIds[index];
+   }
+}
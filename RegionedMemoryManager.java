@@ -0,0 +1,718 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Manages several independent memory regions, modelling the
+ * memory nodes of a multi-socket (NUMA) host. Each region is a
+ * MemoryManager with its own block table and is locked on its
+ * own, so requests served by different regions can run in
+ * parallel. A placement policy chooses which region serves each
+ * request: local-first with fallback, interleave, or most-free.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class RegionedMemoryManager
+{
+   private MemoryManager[] regions;
+   private long totalMemorySize;
+   private volatile char placementPolicy;
+   private volatile int homeRegion;
+   private AtomicInteger interleaveCursor;
+
+   private AtomicLong fallbackCount;
+   private AtomicLong failedRequestCount;
+   private AtomicLongArray requestsServed;
+   private AtomicLongArray fallbacksServed;
+   private volatile BinaryTraceWriter traceRecorder;
+
+   //***********************************************************
+   //
+   // Method: RegionedMemoryManager (Constructor)
+   //
+   // Description: Splits the given number of bytes into the
+   // given number of regions of nearly equal size; the last
+   // region receives any remainder. The placement policy starts
+   // as local-first with region 0 as the home region.
+   //
+   // Parameters:
+   //   long totalBytes - the total number of bytes of memory
+   //   int regionCount - the number of regions
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public RegionedMemoryManager(long totalBytes, int regionCount)
+   {
+      regions = new MemoryManager[regionCount];
+      totalMemorySize = totalBytes;
+
+      long regionBytes;
+      regionBytes = totalBytes / regionCount;
+
+      int index;
+      index = 0;
+
+      while (index < regionCount)
+      {
+         if (index == regionCount - 1)
+         {
+            regions[index] = new MemoryManager(totalBytes - regionBytes * (regionCount - 1));
+         }
+         else
+         {
+            regions[index] = new MemoryManager(regionBytes);
+         }
+
+         index = index + 1;
+      }
+
+      placementPolicy = 'L';
+      homeRegion = 0;
+      interleaveCursor = new AtomicInteger(0);
+      fallbackCount = new AtomicLong(0L);
+      failedRequestCount = new AtomicLong(0L);
+      requestsServed = new AtomicLongArray(regionCount);
+      fallbacksServed = new AtomicLongArray(regionCount);
+   }
+
+   public int getRegionCount()
+   {
+      return regions.length;
+   }
+
+   public long getTotalMemorySize()
+   {
+      return totalMemorySize;
+   }
+
+   public long getFallbackCount()
+   {
+      return fallbackCount.get();
+   }
+
+   public long getFailedRequestCount()
+   {
+      return failedRequestCount.get();
+   }
+
+   //***********************************************************
+   //
+   // Method: getRegion
+   //
+   // Description: Returns the memory manager of one region.
+   // Callers that use it directly must hold its lock, as this
+   // class does.
+   //
+   // Parameters: int regionIndex - the region to return
+   //
+   // Returns: MemoryManager - the region's memory manager
+   //
+   //***********************************************************
+   public MemoryManager getRegion(int regionIndex)
+   {
+      return regions[regionIndex];
+   }
+
+   //***********************************************************
+   //
+   // Method: setPlacementPolicy
+   //
+   // Description: Selects how a region is chosen for each
+   // request. L (local-first) tries the caller's home region and
+   // then the others in order; I (interleave) starts at the next
+   // region in round-robin order; M (most-free) starts at the
+   // region with the most free bytes. Every policy falls back to
+   // the remaining regions when its first choice is full.
+   //
+   // Parameters: char policy - L, I, or M
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void setPlacementPolicy(char policy)
+   {
+      BinaryTraceWriter recorder = traceRecorder;
+
+      if (recorder != null)
+      {
+         recorder.recordRegion(policy, 0);
+      }
+
+      placementPolicy = policy;
+   }
+
+   //***********************************************************
+   //
+   // Method: setHomeRegion
+   //
+   // Description: Selects the home region used by requests that
+   // do not name one.
+   //
+   // Parameters: int regionIndex - the new home region
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void setHomeRegion(int regionIndex)
+   {
+      BinaryTraceWriter recorder = traceRecorder;
+
+      if (recorder != null)
+      {
+         recorder.recordRegion(TraceCommand.REGION_HOME, regionIndex);
+      }
+
+      homeRegion = regionIndex;
+   }
+
+   public int getHomeRegion()
+   {
+      return homeRegion;
+   }
+
+   //***********************************************************
+   //
+   // Method: setTraceRecorder
+   //
+   // Description: Attaches a binary trace writer that records
+   // every RQ, RL, and C command issued to this manager, and
+   // every change of the coalescing policy, size-class cache,
+   // placement policy, or home region, or detaches it when null.
+   // The current placement policy and home region are recorded
+   // first, so a replay starts with them. When several threads
+   // issue commands the trace holds them in the order they were
+   // recorded. The caller remains responsible for closing the
+   // writer.
+   //
+   // Parameters: BinaryTraceWriter recorder - the writer, or
+   // null to stop recording
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void setTraceRecorder(BinaryTraceWriter recorder)
+   {
+      if (recorder != null)
+      {
+         recorder.recordRegion(placementPolicy, 0);
+         recorder.recordRegion(TraceCommand.REGION_HOME, homeRegion);
+      }
+
+      traceRecorder = recorder;
+   }
+
+   //***********************************************************
+   //
+   // Method: requestMemory
+   //
+   // Description: Allocates memory for the process, using the
+   // home region selected with setHomeRegion for the local-first
+   // policy. Callers on several threads that each have their own
+   // region should name it with the other form of this method.
+   //
+   // Parameters:
+   //   String processId - the id of the requesting process
+   //   long requestedBytes - the number of bytes requested
+   //   char strategy - F, B, or W
+   //   char lifetime - L (long-lived) or S (short-lived)
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void requestMemory(String processId, long requestedBytes, char strategy, char lifetime)
+   {
+      requestMemory(processId, requestedBytes, strategy, lifetime, homeRegion);
+   }
+
+   //***********************************************************
+   //
+   // Method: requestMemory
+   //
+   // Description: Allocates memory for the process as described
+   // for tryRequestMemory, printing an error if no region can
+   // satisfy the request.
+   //
+   // Parameters:
+   //   String processId - the id of the requesting process
+   //   long requestedBytes - the number of bytes requested
+   //   char strategy - F, B, or W
+   //   char lifetime - L (long-lived) or S (short-lived)
+   //   int homeRegion - the caller's local region
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void requestMemory(String processId,
+                             long requestedBytes,
+                             char strategy,
+                             char lifetime,
+                             int homeRegion)
+   {
+      BinaryTraceWriter recorder = traceRecorder;
+
+      if (recorder != null)
+      {
+         recorder.recordRequest(processId, requestedBytes, strategy, lifetime);
+      }
+
+      if (!tryRequestMemory(processId, requestedBytes, strategy, lifetime, homeRegion))
+      {
+         System.out.println("Error: Not enough memory for process " + processId + ".");
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: tryRequestMemory
+   //
+   // Description: Allocates memory for the process from the
+   // region chosen by the placement policy, trying the other
+   // regions in turn if that region cannot satisfy the request.
+   // An allocation served by any region other than the first
+   // choice is counted as a cross-region fallback. Only the lock
+   // of the region being tried is held at any time. Failure is
+   // counted and reported to the caller instead of printed.
+   //
+   // Parameters:
+   //   String processId - the id of the requesting process
+   //   long requestedBytes - the number of bytes requested
+   //   char strategy - F, B, or W
+   //   char lifetime - L (long-lived) or S (short-lived)
+   //   int homeRegion - the caller's local region
+   //
+   // Returns: boolean - true if the memory was allocated
+   //
+   //***********************************************************
+   public boolean tryRequestMemory(String processId,
+                                   long requestedBytes,
+                                   char strategy,
+                                   char lifetime,
+                                   int homeRegion)
+   {
+      int firstRegion;
+      firstRegion = chooseFirstRegion(homeRegion);
+
+      boolean allocated;
+      allocated = false;
+
+      int attempt;
+      attempt = 0;
+
+      while (attempt < regions.length && !allocated)
+      {
+         int regionIndex;
+         regionIndex = (firstRegion + attempt) % regions.length;
+         MemoryManager region = regions[regionIndex];
+
+         synchronized (region)
+         {
+            allocated = region.tryRequestMemory(processId, requestedBytes, strategy, lifetime);
+         }
+
+         if (allocated)
+         {
+            requestsServed.incrementAndGet(regionIndex);
+
+            if (attempt > 0)
+            {
+               fallbackCount.incrementAndGet();
+               fallbacksServed.incrementAndGet(regionIndex);
+            }
+         }
+
+         attempt = attempt + 1;
+      }
+
+      if (!allocated)
+      {
+         failedRequestCount.incrementAndGet();
+      }
+
+      return allocated;
+   }
+
+   //***********************************************************
+   //
+   // Method: releaseMemory
+   //
+   // Description: Releases the memory of the process in every
+   // region. An error is displayed only if no region held any
+   // memory for the process.
+   //
+   // Parameters: String processId - the process whose memory
+   // should be released
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void releaseMemory(String processId)
+   {
+      BinaryTraceWriter recorder = traceRecorder;
+
+      if (recorder != null)
+      {
+         recorder.recordRelease(processId);
+      }
+
+      boolean found;
+      found = false;
+
+      int regionIndex;
+      regionIndex = 0;
+
+      while (regionIndex < regions.length)
+      {
+         MemoryManager region = regions[regionIndex];
+
+         synchronized (region)
+         {
+            if (region.tryReleaseMemory(processId))
+            {
+               found = true;
+            }
+         }
+
+         regionIndex = regionIndex + 1;
+      }
+
+      if (!found)
+      {
+         System.out.println("Error: Process " + processId + " not found.");
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: compactMemory
+   //
+   // Description: Compacts each region independently. Blocks
+   // never move between regions.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void compactMemory()
+   {
+      BinaryTraceWriter recorder = traceRecorder;
+
+      if (recorder != null)
+      {
+         recorder.recordCommand(TraceCommand.OP_COMPACT, 0L);
+      }
+
+      int regionIndex;
+      regionIndex = 0;
+
+      while (regionIndex < regions.length)
+      {
+         MemoryManager region = regions[regionIndex];
+
+         synchronized (region)
+         {
+            region.compactMemory();
+         }
+
+         regionIndex = regionIndex + 1;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: printMemoryStatus
+   //
+   // Description: Prints the block table of each region. With
+   // a single region the output is exactly that of a plain
+   // MemoryManager; otherwise each table is preceded by a region
+   // header and uses addresses local to that region.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void printMemoryStatus()
+   {
+      int regionIndex;
+      regionIndex = 0;
+
+      while (regionIndex < regions.length)
+      {
+         MemoryManager region = regions[regionIndex];
+
+         synchronized (region)
+         {
+            if (regions.length > 1)
+            {
+               System.out.println("Region " + regionIndex + ":");
+            }
+
+            region.printMemoryStatus();
+         }
+
+         regionIndex = regionIndex + 1;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: printRegionStatistics
+   //
+   // Description: Prints the utilization of every region, the
+   // requests it served and how many of those were fallbacks
+   // from another region's first choice, followed by the totals.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void printRegionStatistics()
+   {
+      int regionIndex;
+      regionIndex = 0;
+
+      while (regionIndex < regions.length)
+      {
+         MemoryManager region = regions[regionIndex];
+         long totalBytes;
+         long usedBytes;
+
+         synchronized (region)
+         {
+            totalBytes = region.getTotalMemorySize();
+            usedBytes = totalBytes - region.getFreeBytes();
+         }
+
+         System.out.println(String.format("Region %d: %d of %d bytes used (%.2f%%), %d requests served, %d fallbacks",
+                                          regionIndex,
+                                          usedBytes,
+                                          totalBytes,
+                                          usedBytes * 100.0 / totalBytes,
+                                          requestsServed.get(regionIndex),
+                                          fallbacksServed.get(regionIndex)));
+
+         regionIndex = regionIndex + 1;
+      }
+
+      System.out.println("Placement policy: " + placementPolicy
+                         + ", home region: " + homeRegion
+                         + ", cross-region fallbacks: " + fallbackCount.get()
+                         + ", failed requests: " + failedRequestCount.get());
+   }
+
+   //***********************************************************
+   //
+   // Method: setCoalescingPolicy
+   //
+   // Description: Applies the coalescing policy to every region.
+   //
+   // Parameters:
+   //   char policy - E, D, or B
+   //   int limit - the threshold or budget for the policy
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void setCoalescingPolicy(char policy, int limit)
+   {
+      BinaryTraceWriter recorder = traceRecorder;
+
+      if (recorder != null)
+      {
+         recorder.recordMode(TraceCommand.OP_MERGE, policy, limit, 0L);
+      }
+
+      int regionIndex;
+      regionIndex = 0;
+
+      while (regionIndex < regions.length)
+      {
+         MemoryManager region = regions[regionIndex];
+
+         synchronized (region)
+         {
+            region.setCoalescingPolicy(policy, limit);
+         }
+
+         regionIndex = regionIndex + 1;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: enableSizeClassCache
+   //
+   // Description: Gives every region its own size-class cache.
+   //
+   // Parameters:
+   //   int binCapacity - the maximum number of blocks per bin
+   //   long maxCachedSize - the largest block size to cache
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void enableSizeClassCache(int binCapacity, long maxCachedSize)
+   {
+      BinaryTraceWriter recorder = traceRecorder;
+
+      if (recorder != null)
+      {
+         recorder.recordMode(TraceCommand.OP_CACHE, TraceCommand.CACHE_ON, binCapacity, maxCachedSize);
+      }
+
+      int regionIndex;
+      regionIndex = 0;
+
+      while (regionIndex < regions.length)
+      {
+         MemoryManager region = regions[regionIndex];
+
+         synchronized (region)
+         {
+            region.enableSizeClassCache(binCapacity, maxCachedSize);
+         }
+
+         regionIndex = regionIndex + 1;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: disableSizeClassCache
+   //
+   // Description: Turns off the size-class cache of every
+   // region.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void disableSizeClassCache()
+   {
+      BinaryTraceWriter recorder = traceRecorder;
+
+      if (recorder != null)
+      {
+         recorder.recordMode(TraceCommand.OP_CACHE, TraceCommand.CACHE_OFF, 0, 0L);
+      }
+
+      int regionIndex;
+      regionIndex = 0;
+
+      while (regionIndex < regions.length)
+      {
+         MemoryManager region = regions[regionIndex];
+
+         synchronized (region)
+         {
+            region.disableSizeClassCache();
+         }
+
+         regionIndex = regionIndex + 1;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: printCacheStatistics
+   //
+   // Description: Prints the size-class cache statistics of
+   // each region, with a region header when there is more than
+   // one region.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void printCacheStatistics()
+   {
+      int regionIndex;
+      regionIndex = 0;
+
+      while (regionIndex < regions.length)
+      {
+         MemoryManager region = regions[regionIndex];
+
+         synchronized (region)
+         {
+            if (regions.length > 1)
+            {
+               System.out.println("Region " + regionIndex + ":");
+            }
+
+            region.printCacheStatistics();
+         }
+
+         regionIndex = regionIndex + 1;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: chooseFirstRegion
+   //
+   // Description: Chooses the first region to try according to
+   // the placement policy. A home region outside the range of
+   // regions is wrapped into it, as the interleave cursor is, so
+   // that a negative or too large value cannot index past the
+   // regions.
+   //
+   // Parameters: int homeRegion - the caller's local region
+   //
+   // Returns: int - the index of the first region to try
+   //
+   //***********************************************************
+   private int chooseFirstRegion(int homeRegion)
+   {
+      int firstRegion;
+      char policy;
+      policy = placementPolicy;
+
+      if (policy == 'I')
+      {
+         firstRegion = Math.floorMod(interleaveCursor.getAndIncrement(), regions.length);
+      }
+      else if (policy == 'M')
+      {
+         firstRegion = 0;
+
+         long mostFree;
+         mostFree = -1L;
+
+         int regionIndex;
+         regionIndex = 0;
+
+         while (regionIndex < regions.length)
+         {
+            MemoryManager region = regions[regionIndex];
+            long regionFree;
+
+            synchronized (region)
+            {
+               regionFree = region.getFreeBytes();
+            }
+
+            if (regionFree > mostFree)
+            {
+               mostFree = regionFree;
+               firstRegion = regionIndex;
+            }
+
+            regionIndex = regionIndex + 1;
+         }
+      }
+      else
+      {
+         firstRegion = Math.floorMod(homeRegion, regions.length);
+      }
+
+      return firstRegion;
+   }
+}
@@ -0,0 +1,255 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Optional front-end cache that holds recently released blocks
+ * in small bins keyed by their exact size. A later request for
+ * the same size is handed a cached block directly instead of
+ * searching the block table. Cached blocks are kept out of the
+ * hole search and out of coalescing until the cache is flushed.
+ * At most MAX_BINS size classes are held at once and a bin is
+ * dropped as soon as it empties, so the cache never holds more
+ * than MAX_BINS times the bin capacity blocks and a flush only
+ * visits bins that hold blocks.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class SizeClassCache
+{
+   public static final int MAX_BINS = 64;
+
+   private int binCapacity;
+   private long maxCachedSize;
+   private HashMap<Long, ArrayList<MemoryBlock>> bins;
+
+   private long cachedBlockCount;
+   private long cachedBytes;
+   private long hitCount;
+   private long missCount;
+   private long overflowCount;
+   private long flushCount;
+
+   //***********************************************************
+   //
+   // Method: SizeClassCache (Constructor)
+   //
+   // Description: Constructs an empty cache. Each size class
+   // holds at most binCapacity blocks and only blocks no larger
+   // than maxCachedSize are cached.
+   //
+   // Parameters:
+   //   int binCapacity - the maximum number of blocks per bin
+   //   long maxCachedSize - the largest block size to cache
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public SizeClassCache(int binCapacity, long maxCachedSize)
+   {
+      this.binCapacity = binCapacity;
+      this.maxCachedSize = maxCachedSize;
+      bins = new HashMap<Long, ArrayList<MemoryBlock>>();
+   }
+
+   // Statistics getters are intentionally simple
+
+   public long getCachedBlockCount()
+   {
+      return cachedBlockCount;
+   }
+
+   public long getCachedBytes()
+   {
+      return cachedBytes;
+   }
+
+   public long getHitCount()
+   {
+      return hitCount;
+   }
+
+   public long getMissCount()
+   {
+      return missCount;
+   }
+
+   public long getOverflowCount()
+   {
+      return overflowCount;
+   }
+
+   public long getFlushCount()
+   {
+      return flushCount;
+   }
+
+   public boolean isEmpty()
+   {
+      return cachedBlockCount == 0L;
+   }
+
+   //***********************************************************
+   //
+   // Method: offer
+   //
+   // Description: Offers a newly released block to the cache.
+   // The block is cached when its size class is eligible and its
+   // bin still has room. A size class without a bin gets one
+   // only while fewer than MAX_BINS bins exist. Returns false
+   // when the block was not cached; a full bin is also counted
+   // as an overflow, which tells the caller that coalescing
+   // should no longer wait.
+   //
+   // Parameters: MemoryBlock block - the released free block
+   //
+   // Returns: boolean - true if the block is now cached
+   //
+   //***********************************************************
+   public boolean offer(MemoryBlock block)
+   {
+      boolean accepted;
+      accepted = false;
+
+      long blockSize;
+      blockSize = block.getSize();
+
+      if (blockSize <= maxCachedSize)
+      {
+         ArrayList<MemoryBlock> bin = bins.get(blockSize);
+
+         if (bin == null && bins.size() < MAX_BINS)
+         {
+            bin = new ArrayList<MemoryBlock>(binCapacity);
+            bins.put(blockSize, bin);
+         }
+
+         if (bin == null)
+         {
+            accepted = false;
+         }
+         else if (bin.size() < binCapacity)
+         {
+            block.setCached(true);
+            bin.add(block);
+            cachedBlockCount = cachedBlockCount + 1L;
+            cachedBytes = cachedBytes + blockSize;
+            accepted = true;
+         }
+         else
+         {
+            overflowCount = overflowCount + 1L;
+         }
+      }
+
+      return accepted;
+   }
+
+   //***********************************************************
+   //
+   // Method: take
+   //
+   // Description: Removes and returns the most recently cached
+   // block of exactly the requested size, or null if there is
+   // no bin for that size. A bin that empties is dropped. Every
+   // lookup counts as a hit or a miss.
+   //
+   // Parameters: long requestedBytes - the requested block size
+   //
+   // Returns: MemoryBlock - a cached free block, or null
+   //
+   //***********************************************************
+   public MemoryBlock take(long requestedBytes)
+   {
+      MemoryBlock block;
+      block = null;
+
+      ArrayList<MemoryBlock> bin = bins.get(requestedBytes);
+
+      if (bin != null)
+      {
+         block = bin.remove(bin.size() - 1);
+         block.setCached(false);
+
+         if (bin.isEmpty())
+         {
+            bins.remove(requestedBytes);
+         }
+
+         cachedBlockCount = cachedBlockCount - 1L;
+         cachedBytes = cachedBytes - requestedBytes;
+         hitCount = hitCount + 1L;
+      }
+      else
+      {
+         missCount = missCount + 1L;
+      }
+
+      return block;
+   }
+
+   //***********************************************************
+   //
+   // Method: flush
+   //
+   // Description: Returns every cached block to the ordinary
+   // pool of free blocks so that it can be coalesced and found
+   // by the hole search again, and drops every bin. The caller
+   // is responsible for merging afterwards.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public void flush()
+   {
+      for (ArrayList<MemoryBlock> bin : bins.values())
+      {
+         int index;
+         int numberOfBlocks;
+         numberOfBlocks = bin.size();
+         index = 0;
+
+         while (index < numberOfBlocks)
+         {
+            bin.get(index).setCached(false);
+            index = index + 1;
+         }
+      }
+
+      bins.clear();
+      cachedBlockCount = 0L;
+      cachedBytes = 0L;
+      flushCount = flushCount + 1L;
+   }
+
+   //***********************************************************
+   //
+   // Method: getHitRate
+   //
+   // Description: Computes the fraction of lookups that were
+   // satisfied from the cache.
+   //
+   // Parameters: None
+   //
+   // Returns: double - the hit rate between 0.0 and 1.0
+   //
+   //***********************************************************
+   public double getHitRate()
+   {
+      double hitRate;
+      hitRate = 0.0;
+
+      long lookups;
+      lookups = hitCount + missCount;
+
+      if (lookups > 0L)
+      {
+         hitRate = (double) hitCount / (double) lookups;
+      }
+
+      return hitRate;
+   }
+}
@@ -0,0 +1,282 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Defines the compact numeric form of allocator commands used by
+ * trace replay, and applies a decoded command to a MemoryManager
+ * or a RegionedMemoryManager with the same messages the
+ * interactive prompt prints.
+ */
+
+public final class TraceCommand
+{
+   public static final int OP_REQUEST = 0;
+   public static final int OP_RELEASE = 1;
+   public static final int OP_COMPACT = 2;
+   public static final int OP_STATUS = 3;
+   public static final int OP_EXIT = 4;
+   public static final int OP_INVALID = 5;
+   public static final int OP_CACHE = 6;
+   public static final int OP_MERGE = 7;
+   public static final int OP_REGION = 8;
+
+   // Error codes carried in the size field of an OP_INVALID command
+
+   public static final int ERROR_UNKNOWN_COMMAND = 0;
+   public static final int ERROR_REQUEST_USAGE = 1;
+   public static final int ERROR_REQUEST_SIZE = 2;
+   public static final int ERROR_REQUEST_NOT_POSITIVE = 3;
+   public static final int ERROR_REQUEST_STRATEGY = 4;
+   public static final int ERROR_RELEASE_USAGE = 5;
+   public static final int ERROR_REQUEST_LIFETIME = 6;
+   public static final int ERROR_CACHE_USAGE = 7;
+   public static final int ERROR_CACHE_NOT_POSITIVE = 8;
+   public static final int ERROR_CACHE_SETTINGS = 9;
+   public static final int ERROR_MERGE_USAGE = 10;
+   public static final int ERROR_MERGE_POLICY = 11;
+   public static final int ERROR_MERGE_NOT_POSITIVE = 12;
+   public static final int ERROR_MERGE_LIMIT = 13;
+
+   // Options carried in the strategy field of an OP_CACHE command
+
+   public static final char CACHE_ON = 'N';
+   public static final char CACHE_OFF = 'F';
+   public static final char CACHE_STAT = 'S';
+
+   // Option carried in the strategy field of an OP_REGION command
+   // that sets the home region; L, I, and M set the policy
+
+   public static final char REGION_HOME = 'H';
+
+   private static final String[] ERROR_MESSAGES =
+   {
+      "Invalid command. Please enter RQ, RL, C, STAT, CACHE, MERGE, REGION, RECORD, or X.",
+      "Invalid RQ command. Usage: RQ <ProcessId> <Bytes> <F|B|W> [L|S]",
+      "Invalid size value. Please enter an integer number of bytes.",
+      "Requested size must be greater than zero.",
+      "Invalid strategy. Use F, B, or W.",
+      "Invalid RL command. Usage: RL <ProcessId>",
+      "Invalid lifetime. Use L or S.",
+      "Invalid CACHE command. Usage: CACHE ON [<BinCapacity> <MaxBytes>] | CACHE OFF | CACHE STAT",
+      "Bin capacity and maximum size must be greater than zero.",
+      "Invalid cache settings. Please enter integer values.",
+      "Invalid MERGE command. Usage: MERGE <E|D|B> [<Limit>]",
+      "Invalid policy. Use E, D, or B.",
+      "Limit must be greater than zero.",
+      "Invalid limit value. Please enter an integer."
+   };
+
+   //***********************************************************
+   //
+   // Method: TraceCommand (Constructor)
+   //
+   // Description: Private constructor. This class only holds
+   // constants and static helpers.
+   //
+   // Parameters: None
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private TraceCommand()
+   {
+   }
+
+   //***********************************************************
+   //
+   // Method: getErrorMessage
+   //
+   // Description: Returns the message printed for an invalid
+   // command. The interactive prompt prints the same messages,
+   // so a replayed trace and a typed session agree.
+   //
+   // Parameters: int errorCode - one of the ERROR_ constants
+   //
+   // Returns: String - the message for the error code
+   //
+   //***********************************************************
+   public static String getErrorMessage(int errorCode)
+   {
+      return ERROR_MESSAGES[errorCode];
+   }
+
+   //***********************************************************
+   //
+   // Method: apply
+   //
+   // Description: Applies one decoded command to the memory
+   // manager. Invalid commands print the message that the
+   // interactive prompt would have printed for the same line. A
+   // single manager has no regions, so REGION commands are
+   // ignored.
+   //
+   // Parameters:
+   //   MemoryManager memoryManager - the allocator to update
+   //   int opcode - one of the OP_ constants
+   //   String processId - the process id for RQ and RL
+   //   long size - the requested bytes for RQ, the largest
+   //               cached block size for CACHE ON, or the error
+   //               code for an invalid command
+   //   char strategy - F, B, or W for RQ; the policy for MERGE;
+   //                   or CACHE_ON, CACHE_OFF, or CACHE_STAT
+   //   char lifetime - L or S for RQ
+   //   int limit - the limit for MERGE, or the bin capacity for
+   //               CACHE ON
+   //
+   // Returns: boolean - true if the command was X
+   //
+   //***********************************************************
+   public static boolean apply(MemoryManager memoryManager,
+                               int opcode,
+                               String processId,
+                               long size,
+                               char strategy,
+                               char lifetime,
+                               int limit)
+   {
+      boolean shouldExit;
+      shouldExit = false;
+
+      if (opcode == OP_REQUEST)
+      {
+         memoryManager.requestMemory(processId, size, strategy, lifetime);
+      }
+      else if (opcode == OP_RELEASE)
+      {
+         memoryManager.releaseMemory(processId);
+      }
+      else if (opcode == OP_COMPACT)
+      {
+         memoryManager.compactMemory();
+      }
+      else if (opcode == OP_STATUS)
+      {
+         memoryManager.printMemoryStatus();
+      }
+      else if (opcode == OP_CACHE)
+      {
+         if (strategy == CACHE_ON)
+         {
+            memoryManager.enableSizeClassCache(limit, size);
+         }
+         else if (strategy == CACHE_OFF)
+         {
+            memoryManager.disableSizeClassCache();
+         }
+         else
+         {
+            memoryManager.printCacheStatistics();
+         }
+      }
+      else if (opcode == OP_MERGE)
+      {
+         memoryManager.setCoalescingPolicy(strategy, limit);
+      }
+      else if (opcode == OP_EXIT)
+      {
+         shouldExit = true;
+      }
+      else if (opcode != OP_REGION)
+      {
+         System.out.println(ERROR_MESSAGES[(int) size]);
+      }
+
+      return shouldExit;
+   }
+
+   //***********************************************************
+   //
+   // Method: apply
+   //
+   // Description: Applies one decoded command to a regioned
+   // memory manager, as the interactive prompt does. REGION
+   // commands select the placement policy, or the home region
+   // carried in the limit field.
+   //
+   // Parameters:
+   //   RegionedMemoryManager memoryManager - the allocator to
+   //                                         update
+   //   int opcode - one of the OP_ constants
+   //   String processId - the process id for RQ and RL
+   //   long size - the requested bytes for RQ, the largest
+   //               cached block size for CACHE ON, or the error
+   //               code for an invalid command
+   //   char strategy - F, B, or W for RQ; the policy for MERGE;
+   //                   CACHE_ON, CACHE_OFF, or CACHE_STAT; or L,
+   //                   I, M, or REGION_HOME for REGION
+   //   char lifetime - L or S for RQ
+   //   int limit - the limit for MERGE, the bin capacity for
+   //               CACHE ON, or the home region for REGION HOME
+   //
+   // Returns: boolean - true if the command was X
+   //
+   //***********************************************************
+   public static boolean apply(RegionedMemoryManager memoryManager,
+                               int opcode,
+                               String processId,
+                               long size,
+                               char strategy,
+                               char lifetime,
+                               int limit)
+   {
+      boolean shouldExit;
+      shouldExit = false;
+
+      if (opcode == OP_REQUEST)
+      {
+         memoryManager.requestMemory(processId, size, strategy, lifetime);
+      }
+      else if (opcode == OP_RELEASE)
+      {
+         memoryManager.releaseMemory(processId);
+      }
+      else if (opcode == OP_COMPACT)
+      {
+         memoryManager.compactMemory();
+      }
+      else if (opcode == OP_STATUS)
+      {
+         memoryManager.printMemoryStatus();
+      }
+      else if (opcode == OP_CACHE)
+      {
+         if (strategy == CACHE_ON)
+         {
+            memoryManager.enableSizeClassCache(limit, size);
+         }
+         else if (strategy == CACHE_OFF)
+         {
+            memoryManager.disableSizeClassCache();
+         }
+         else
+         {
+            memoryManager.printCacheStatistics();
+         }
+      }
+      else if (opcode == OP_MERGE)
+      {
+         memoryManager.setCoalescingPolicy(strategy, limit);
+      }
+      else if (opcode == OP_REGION)
+      {
+         if (strategy == REGION_HOME)
+         {
+            memoryManager.setHomeRegion(limit);
+         }
+         else
+         {
+            memoryManager.setPlacementPolicy(strategy);
+         }
+      }
+      else if (opcode == OP_EXIT)
+      {
+         shouldExit = true;
+      }
+      else
+      {
+         System.out.println(ERROR_MESSAGES[(int) size]);
+      }
+
+      return shouldExit;
+   }
+}
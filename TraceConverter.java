@@ -0,0 +1,126 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Converts a text trace of allocator commands into the binary
+ * trace format. Lines are decoded with TraceParser, so invalid
+ * lines are kept as invalid commands and replay prints the same
+ * messages; blank lines are dropped. Sizes of both files are
+ * reported when the conversion finishes.
+ *
+ * Usage: java TraceConverter <TextTrace> <BinaryTrace> [Z]
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+public class TraceConverter
+{
+   //***********************************************************
+   //
+   // Method: main
+   //
+   // Description: Validates the command line arguments and
+   // converts the trace. A trailing Z compresses the chunks of
+   // the binary trace.
+   //
+   // Parameters: String[] args - command line arguments
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public static void main(String[] args)
+   {
+      if ((args.length != 2 && args.length != 3)
+          || (args.length == 3 && !args[2].equalsIgnoreCase("Z")))
+      {
+         System.err.println("Usage: java TraceConverter <TextTrace> <BinaryTrace> [Z]");
+      }
+      else
+      {
+         try
+         {
+            long commandCount = convert(args[0], args[1], args.length == 3);
+            long textBytes = new File(args[0]).length();
+            long binaryBytes = new File(args[1]).length();
+
+            System.out.println(String.format("Converted %d commands: %d text bytes, %d binary bytes (%.1fx smaller)",
+                                             commandCount,
+                                             textBytes,
+                                             binaryBytes,
+                                             (double) textBytes / Math.max(1L, binaryBytes)));
+         }
+         catch (IOException exception)
+         {
+            System.err.println("Error: Could not convert trace " + args[0] + ": " + exception.getMessage());
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: convert
+   //
+   // Description: Reads every line of the text trace and writes
+   // the decoded commands to a new binary trace.
+   //
+   // Parameters:
+   //   String textFileName - the text trace to read
+   //   String binaryFileName - the binary trace to create
+   //   boolean compressed - true to deflate each chunk
+   //
+   // Returns: long - the number of commands written
+   //
+   // Throws: IOException if either file cannot be accessed
+   //
+   //***********************************************************
+   public static long convert(String textFileName, String binaryFileName, boolean compressed) throws IOException
+   {
+      ProcessIdDictionary processIdDictionary = new ProcessIdDictionary();
+      TraceParser parser = new TraceParser(processIdDictionary);
+      BinaryTraceWriter writer = new BinaryTraceWriter(binaryFileName, compressed);
+
+      try (BufferedReader reader = new BufferedReader(new FileReader(textFileName), 1 << 16))
+      {
+         String line = reader.readLine();
+
+         while (line != null)
+         {
+            if (parser.parse(line))
+            {
+               int opcode = parser.getOpcode();
+
+               if (opcode == TraceCommand.OP_REQUEST)
+               {
+                  writer.recordRequest(processIdDictionary.processIdAt(parser.getProcessIndex()),
+                                       parser.getSize(),
+                                       parser.getStrategy(),
+                                       parser.getLifetime());
+               }
+               else if (opcode == TraceCommand.OP_RELEASE)
+               {
+                  writer.recordRelease(processIdDictionary.processIdAt(parser.getProcessIndex()));
+               }
+               else if (opcode == TraceCommand.OP_CACHE || opcode == TraceCommand.OP_MERGE)
+               {
+                  writer.recordMode(opcode, parser.getStrategy(), parser.getLimit(), parser.getSize());
+               }
+               else
+               {
+                  writer.recordCommand(opcode, parser.getSize());
+               }
+            }
+
+            line = reader.readLine();
+         }
+      }
+      finally
+      {
+         writer.close();
+      }
+
+      return writer.getCommandCount();
+   }
+}
@@ -0,0 +1,467 @@
+/*
+ * Memory Allocation Simulator
+ *
+ * Description:
+ * Decodes text allocator commands into the compact numeric form
+ * defined by TraceCommand. Unlike the interactive prompt it does
+ * not split the line into strings; tokens are located in place
+ * and only process ids are turned into strings, once each, by
+ * the process id dictionary. Commands are validated with the
+ * same checks as Main and rejected with the same messages, which
+ * both take from TraceCommand. REGION and RECORD only control the
+ * regions and recording of an interactive session, which a replay
+ * into one MemoryManager does not have, so they are skipped like
+ * blank lines.
+ */
+
+public class TraceParser
+{
+   private static final int MAX_TOKENS = 5;
+
+   private ProcessIdDictionary processIdDictionary;
+   private int[] tokenStarts;
+   private int[] tokenEnds;
+   private int tokenCount;
+
+   private int opcode;
+   private int processIndex;
+   private long size;
+   private char strategy;
+   private char lifetime;
+   private int limit;
+
+   //***********************************************************
+   //
+   // Method: TraceParser (Constructor)
+   //
+   // Description: Constructs a parser that assigns process id
+   // indexes from the given dictionary.
+   //
+   // Parameters: ProcessIdDictionary processIdDictionary - the
+   // dictionary owned by the parsing thread
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   public TraceParser(ProcessIdDictionary processIdDictionary)
+   {
+      this.processIdDictionary = processIdDictionary;
+      tokenStarts = new int[MAX_TOKENS];
+      tokenEnds = new int[MAX_TOKENS];
+   }
+
+   // Getters for the most recently parsed command
+
+   public int getOpcode()
+   {
+      return opcode;
+   }
+
+   public int getProcessIndex()
+   {
+      return processIndex;
+   }
+
+   public long getSize()
+   {
+      return size;
+   }
+
+   public char getStrategy()
+   {
+      return strategy;
+   }
+
+   public char getLifetime()
+   {
+      return lifetime;
+   }
+
+   public int getLimit()
+   {
+      return limit;
+   }
+
+   //***********************************************************
+   //
+   // Method: parse
+   //
+   // Description: Decodes one command line. Blank lines are
+   // skipped, matching the interactive prompt, and so are REGION
+   // and RECORD commands. Lines that the prompt would reject
+   // decode to OP_INVALID with the matching error code in the
+   // size field.
+   //
+   // Parameters: String line - the raw command line
+   //
+   // Returns: boolean - false if the line was skipped and no
+   // command was decoded; true otherwise
+   //
+   //***********************************************************
+   public boolean parse(String line)
+   {
+      tokenize(line);
+
+      boolean decoded;
+      decoded = tokenCount > 0
+                && !tokenEquals(line, 0, "REGION")
+                && !tokenEquals(line, 0, "RECORD");
+
+      if (decoded)
+      {
+         opcode = TraceCommand.OP_INVALID;
+         processIndex = -1;
+         size = TraceCommand.ERROR_UNKNOWN_COMMAND;
+         strategy = 'F';
+         lifetime = 'L';
+         limit = 0;
+
+         if (tokenEquals(line, 0, "RQ"))
+         {
+            parseRequest(line);
+         }
+         else if (tokenEquals(line, 0, "RL"))
+         {
+            if (tokenCount != 2)
+            {
+               size = TraceCommand.ERROR_RELEASE_USAGE;
+            }
+            else
+            {
+               opcode = TraceCommand.OP_RELEASE;
+               processIndex = processIdDictionary.indexOf(tokenString(line, 1));
+               size = 0L;
+            }
+         }
+         else if (tokenEquals(line, 0, "C"))
+         {
+            opcode = TraceCommand.OP_COMPACT;
+         }
+         else if (tokenEquals(line, 0, "STAT"))
+         {
+            opcode = TraceCommand.OP_STATUS;
+         }
+         else if (tokenEquals(line, 0, "CACHE"))
+         {
+            parseCache(line);
+         }
+         else if (tokenEquals(line, 0, "MERGE"))
+         {
+            parseMerge(line);
+         }
+         else if (tokenEquals(line, 0, "X"))
+         {
+            opcode = TraceCommand.OP_EXIT;
+         }
+
+         if (opcode != TraceCommand.OP_INVALID && opcode != TraceCommand.OP_REQUEST
+             && opcode != TraceCommand.OP_CACHE)
+         {
+            size = 0L;
+         }
+      }
+
+      return decoded;
+   }
+
+   //***********************************************************
+   //
+   // Method: parseRequest
+   //
+   // Description: Decodes the operands of an RQ command using
+   // the same checks, in the same order, as the interactive
+   // prompt.
+   //
+   // Parameters: String line - the raw command line
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void parseRequest(String line)
+   {
+      if (tokenCount != 4 && tokenCount != 5)
+      {
+         size = TraceCommand.ERROR_REQUEST_USAGE;
+      }
+      else
+      {
+         try
+         {
+            long requestedBytes = Long.parseLong(line, tokenStarts[2], tokenEnds[2], 10);
+            char requestedStrategy = Character.toUpperCase(line.charAt(tokenStarts[3]));
+            char requestedLifetime = 'L';
+
+            if (tokenCount == 5)
+            {
+               requestedLifetime = Character.toUpperCase(line.charAt(tokenStarts[4]));
+            }
+
+            if (requestedBytes <= 0L)
+            {
+               size = TraceCommand.ERROR_REQUEST_NOT_POSITIVE;
+            }
+            else if (requestedStrategy != 'F' && requestedStrategy != 'B' && requestedStrategy != 'W')
+            {
+               size = TraceCommand.ERROR_REQUEST_STRATEGY;
+            }
+            else if (requestedLifetime != 'L' && requestedLifetime != 'S')
+            {
+               size = TraceCommand.ERROR_REQUEST_LIFETIME;
+            }
+            else
+            {
+               opcode = TraceCommand.OP_REQUEST;
+               processIndex = processIdDictionary.indexOf(tokenString(line, 1));
+               size = requestedBytes;
+               strategy = requestedStrategy;
+               lifetime = requestedLifetime;
+            }
+         }
+         catch (NumberFormatException exception)
+         {
+            size = TraceCommand.ERROR_REQUEST_SIZE;
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: parseCache
+   //
+   // Description: Decodes the operands of a CACHE command using
+   // the same checks, in the same order, as the interactive
+   // prompt. CACHE ON without settings uses the prompt's default
+   // bin capacity and largest cached size.
+   //
+   // Parameters: String line - the raw command line
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void parseCache(String line)
+   {
+      if (tokenCount < 2)
+      {
+         size = TraceCommand.ERROR_CACHE_USAGE;
+      }
+      else if (tokenEquals(line, 1, "ON") && (tokenCount == 2 || tokenCount == 4))
+      {
+         int binCapacity;
+         long maxCachedSize;
+         binCapacity = 7;
+         maxCachedSize = 1024L * 1024L;
+
+         try
+         {
+            if (tokenCount == 4)
+            {
+               binCapacity = Integer.parseInt(line, tokenStarts[2], tokenEnds[2], 10);
+               maxCachedSize = Long.parseLong(line, tokenStarts[3], tokenEnds[3], 10);
+            }
+
+            if (binCapacity <= 0 || maxCachedSize <= 0L)
+            {
+               size = TraceCommand.ERROR_CACHE_NOT_POSITIVE;
+            }
+            else
+            {
+               opcode = TraceCommand.OP_CACHE;
+               strategy = TraceCommand.CACHE_ON;
+               limit = binCapacity;
+               size = maxCachedSize;
+            }
+         }
+         catch (NumberFormatException exception)
+         {
+            size = TraceCommand.ERROR_CACHE_SETTINGS;
+         }
+      }
+      else if (tokenEquals(line, 1, "OFF") && tokenCount == 2)
+      {
+         opcode = TraceCommand.OP_CACHE;
+         strategy = TraceCommand.CACHE_OFF;
+         size = 0L;
+      }
+      else if (tokenEquals(line, 1, "STAT") && tokenCount == 2)
+      {
+         opcode = TraceCommand.OP_CACHE;
+         strategy = TraceCommand.CACHE_STAT;
+         size = 0L;
+      }
+      else
+      {
+         size = TraceCommand.ERROR_CACHE_USAGE;
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: parseMerge
+   //
+   // Description: Decodes the operands of a MERGE command using
+   // the same checks, in the same order, as the interactive
+   // prompt, including its default limit for each policy.
+   //
+   // Parameters: String line - the raw command line
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void parseMerge(String line)
+   {
+      if (tokenCount < 2 || tokenCount > 3)
+      {
+         size = TraceCommand.ERROR_MERGE_USAGE;
+      }
+      else
+      {
+         char policy = Character.toUpperCase(line.charAt(tokenStarts[1]));
+         int mergeLimit;
+         mergeLimit = 1;
+
+         if (policy == 'D')
+         {
+            mergeLimit = 16;
+         }
+
+         try
+         {
+            if (tokenCount == 3)
+            {
+               mergeLimit = Integer.parseInt(line, tokenStarts[2], tokenEnds[2], 10);
+            }
+
+            if (tokenEnds[1] - tokenStarts[1] != 1 || (policy != 'E' && policy != 'D' && policy != 'B'))
+            {
+               size = TraceCommand.ERROR_MERGE_POLICY;
+            }
+            else if (mergeLimit <= 0)
+            {
+               size = TraceCommand.ERROR_MERGE_NOT_POSITIVE;
+            }
+            else
+            {
+               opcode = TraceCommand.OP_MERGE;
+               strategy = policy;
+               limit = mergeLimit;
+            }
+         }
+         catch (NumberFormatException exception)
+         {
+            size = TraceCommand.ERROR_MERGE_LIMIT;
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: tokenize
+   //
+   // Description: Records the start and end positions of the
+   // whitespace separated tokens in the line. Only the first
+   // MAX_TOKENS positions are kept, but every token is counted.
+   //
+   // Parameters: String line - the raw command line
+   //
+   // Returns: N/A
+   //
+   //***********************************************************
+   private void tokenize(String line)
+   {
+      tokenCount = 0;
+
+      int index;
+      int length;
+      length = line.length();
+      index = 0;
+
+      while (index < length)
+      {
+         while (index < length && isSeparator(line.charAt(index)))
+         {
+            index = index + 1;
+         }
+
+         if (index < length)
+         {
+            int start;
+            start = index;
+
+            while (index < length && !isSeparator(line.charAt(index)))
+            {
+               index = index + 1;
+            }
+
+            if (tokenCount < MAX_TOKENS)
+            {
+               tokenStarts[tokenCount] = start;
+               tokenEnds[tokenCount] = index;
+            }
+
+            tokenCount = tokenCount + 1;
+         }
+      }
+   }
+
+   //***********************************************************
+   //
+   // Method: isSeparator
+   //
+   // Description: Reports whether the character is one of the
+   // whitespace characters matched by the \s regular expression
+   // class used by the interactive prompt.
+   //
+   // Parameters: char character - the character to test
+   //
+   // Returns: boolean - true for a separator character
+   //
+   //***********************************************************
+   private static boolean isSeparator(char character)
+   {
+      return character == ' ' || character == '\t' || character == '\n'
+             || character == '\u000B' || character == '\f' || character == '\r';
+   }
+
+   //***********************************************************
+   //
+   // Method: tokenEquals
+   //
+   // Description: Compares a token with an upper case command
+   // word, ignoring the case of the token.
+   //
+   // Parameters:
+   //   String line - the raw command line
+   //   int tokenIndex - the token to compare
+   //   String word - the upper case command word
+   //
+   // Returns: boolean - true if the token matches the word
+   //
+   //***********************************************************
+   private boolean tokenEquals(String line, int tokenIndex, String word)
+   {
+      int start;
+      int length;
+      start = tokenStarts[tokenIndex];
+      length = tokenEnds[tokenIndex] - start;
+
+      return length == word.length() && line.regionMatches(true, start, word, 0, length);
+   }
+
+   //***********************************************************
+   //
+   // Method: tokenString
+   //
+   // Description: Returns the text of a token as a string.
+   //
+   // Parameters:
+   //   String line - the raw command line
+   //   int tokenIndex - the token to extract
+   //
+   // Returns: String - the token text
+   //
+   //***********************************************************
+   private String tokenString(String line, int tokenIndex)
+   {
+      return line.substring(tokenStarts[tokenIndex], tokenEnds[tokenIndex]);
+   }
+}